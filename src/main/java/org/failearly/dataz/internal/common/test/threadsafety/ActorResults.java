@@ -0,0 +1,118 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ActorResults contains the results of all actors (threads) of one iteration as one tuple. It's passed to the
+ * {@link ThreadSafetyVerifier.Arbiter} (see {@link ThreadSafetyVerifier#arbiter(ThreadSafetyVerifier.Arbiter)}).
+ * <br><br>
+ * Each actor has executed {@link #getOperationsPerActor()} operations. An operation has no result, if it failed or
+ * has been skipped (fail fast). The instance is only valid within the arbiter call.
+ *
+ * @param <R> the result type (Void for {@link VerificationBlockVerifier})
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ActorResults<R> {
+    private final ResultSlots<R> results;
+    private final int[][] blockChoices;
+    private final int operationsPerActor;
+
+    ActorResults(ResultSlots<R> results, int[][] blockChoices) {
+        this.results=results;
+        this.blockChoices=blockChoices;
+        this.operationsPerActor=blockChoices.length > 0 ? blockChoices[0].length : 0;
+    }
+
+    /**
+     * @return number of actors (threads).
+     */
+    public int getNumberOfActors() {
+        return blockChoices.length;
+    }
+
+    /**
+     * @return number of operations of each actor.
+     */
+    public int getOperationsPerActor() {
+        return operationsPerActor;
+    }
+
+    /**
+     * @param actor     the actor index
+     * @param operation the operation index
+     *
+     * @return the index of the executed block (in order of declaration).
+     */
+    public int getBlockIndex(int actor, int operation) {
+        return blockChoices[actor][operation];
+    }
+
+    /**
+     * @param actor     the actor index
+     * @param operation the operation index
+     *
+     * @return {@code true} if the operation has been executed successfully.
+     */
+    public boolean hasResult(int actor, int operation) {
+        return results.hasValue(slot(actor, operation));
+    }
+
+    /**
+     * @param actor     the actor index
+     * @param operation the operation index
+     *
+     * @return the result of the operation ({@code null} if there is no result).
+     */
+    public R get(int actor, int operation) {
+        final int slot=slot(actor, operation);
+        return results.hasValue(slot) ? results.boxedValue(slot) : null;
+    }
+
+    /**
+     * Primitive access for {@link IntExecutionBlockVerifier} and {@link LongExecutionBlockVerifier}.
+     *
+     * @param actor     the actor index
+     * @param operation the operation index
+     *
+     * @return the result of the operation ({@code 0} if there is no result).
+     */
+    public long getLong(int actor, int operation) {
+        final int slot=slot(actor, operation);
+        return results.hasValue(slot) ? results.longValue(slot) : 0L;
+    }
+
+    /**
+     * @param actor the actor index
+     *
+     * @return all results of the actor (operations without result are left out).
+     */
+    public List<R> getResults(int actor) {
+        final List<R> actorResults=new ArrayList<>(operationsPerActor);
+        for (int operation=0; operation < operationsPerActor; operation++) {
+            if (hasResult(actor, operation)) {
+                actorResults.add(get(actor, operation));
+            }
+        }
+        return actorResults;
+    }
+
+    private int slot(int actor, int operation) {
+        if (operation < 0 || operation >= operationsPerActor) {
+            throw new IndexOutOfBoundsException("Operation: " + operation + ", operations per actor: " + operationsPerActor);
+        }
+        return actor * operationsPerActor + operation;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * BlockExecutionEvent is the (fine-grained) Java Flight Recorder event of one executed block (see
+ * {@link ThreadSafetyVerifier#recordBlockEvents()}).
+ * <br><br>
+ * The workers check {@link #isRecorded()} once per iteration, so without a running recording no event will be
+ * created at all.
+ */
+@Name(BlockExecutionEvent.NAME)
+@Label("Thread Safety Block Execution")
+@Category({"dataZ", "Thread Safety"})
+@Description("One executed block (operation) of a thread safety verification.")
+@StackTrace(false)
+final class BlockExecutionEvent extends Event {
+    static final String NAME="org.failearly.dataz.threadsafety.BlockExecution";
+    private static final EventType EVENT_TYPE=EventType.getEventType(BlockExecutionEvent.class);
+
+    @Label("Worker")
+    int worker;
+
+    @Label("Operation")
+    int operation;
+
+    @Label("Block")
+    int block;
+
+    @Label("Failed")
+    @Description("The block caught an assertion error or an unexpected exception.")
+    boolean failed;
+
+    /**
+     * @return {@code true} if the event is enabled within a running recording.
+     */
+    static boolean isRecorded() {
+        return EVENT_TYPE.isEnabled();
+    }
+}
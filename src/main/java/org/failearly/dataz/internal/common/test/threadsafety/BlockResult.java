@@ -14,68 +14,47 @@ package org.failearly.dataz.internal.common.test.threadsafety;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.util.Optional;
 
 /**
- * BlockResult is a (internal) class for {@link ThreadSafetyVerifier}. It collects the result of
+ * BlockResult is a (internal) class for {@link ThreadSafetyVerifier}. It collects the failure of
  * the execution of {@link ExecutionBlockVerifier.ExecutionBlock} or {@link VerificationBlockVerifier.VerificationBlock}.
  * <br><br>
  * <ul>
  *    <li>An ({@link AssertionError})</li>
- *    <li>An unexpected unexpectedException {@link Throwable}</li>
- *    <li>or the result object of type R</li>
+ *    <li>or an unexpected unexpectedException {@link Throwable}</li>
  * </ul>
+ * The values of successful executions are stored into {@link ResultSlots} directly, so a BlockResult will only be
+ * created for a failure.
+ *
  * @param <R> any result type (incl. Void)
  */
-@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 final class BlockResult<R> {
-    private static final BlockResult<Void> OK=new BlockResult<>(null, null, null);
-
     private final String threadName = Thread.currentThread().getName();
-    private final Optional<AssertionError> assertionError;
-    private final Optional<Throwable> unexpectedException;
-    private final Optional<R> value;
-
-    private BlockResult(AssertionError assertionError, Throwable unexpectedException, R value) {
-        this.assertionError=Optional.ofNullable(assertionError);
-        this.unexpectedException=Optional.ofNullable(unexpectedException);
-        this.value=Optional.ofNullable(value);
-    }
-
-    static BlockResult<Void> ok() {
-        return OK;
-    }
+    private final AssertionError assertionError;
+    private final Throwable unexpectedException;
 
-    static <R> BlockResult<R> ok(R value) {
-        return new BlockResult<>(null, null, value);
+    private BlockResult(AssertionError assertionError, Throwable unexpectedException) {
+        this.assertionError=assertionError;
+        this.unexpectedException=unexpectedException;
     }
 
     static <R> BlockResult<R> caughtAssertion(AssertionError assertionError) {
-        return new BlockResult<>(assertionError, null, null);
+        return new BlockResult<>(assertionError, null);
     }
 
     static <R> BlockResult<R> caughtUnexpectedException(Throwable exception) {
-        return new BlockResult<>(null, exception, null);
-    }
-
-    boolean isNotOk() {
-        return assertionError.isPresent() || unexpectedException.isPresent();
-    }
-
-    Optional<R> getValue() {
-        return value;
+        return new BlockResult<>(null, exception);
     }
 
     StringBuilder appendTo(StringBuilder stringBuilder) {
-        assert isNotOk() : "Only in case of any exception";
         stringBuilder.append("\n\n\n");
-        if (assertionError.isPresent()) {
+        if (assertionError != null) {
             stringBuilder.append("AssertionError caught in thread ").append(threadName).append(":\n\n");
-            stringBuilder.append(printToString(assertionError.get()));
+            stringBuilder.append(printToString(assertionError));
         }
-        if (unexpectedException.isPresent()) {
+        if (unexpectedException != null) {
             stringBuilder.append("Unexpected exception caught in thread ").append(threadName).append(":\n\n");
-            stringBuilder.append(printToString(unexpectedException.get()));
+            stringBuilder.append(printToString(unexpectedException));
         }
         return stringBuilder;
     }
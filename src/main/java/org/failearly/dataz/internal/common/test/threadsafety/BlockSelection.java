@@ -0,0 +1,137 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * BlockSelection is a (internal) class for {@link ThreadSafetyVerifier}. It chooses the block of each operation
+ * (see {@link ThreadSafetyVerifier#times(int)} and {@link ThreadSafetyVerifier#weight(int)}):
+ * <ul>
+ *     <li>uniform: each block with the same probability (default),</li>
+ *     <li>weighted: each block with a probability proportional to it's weight,</li>
+ *     <li>roles: each thread executes always the same block. The roles are assigned to the threads in order of
+ *     declaration, repeating if there are more threads than roles (there must not be less threads).</li>
+ * </ul>
+ * Immutable.
+ */
+final class BlockSelection {
+    private final int numberOfBlocks;
+    private final int[] setting;
+    private final int[] roles;
+    private final int[] cumulativeWeights;
+
+    private BlockSelection(int numberOfBlocks, int[] setting, int[] roles, int[] cumulativeWeights) {
+        this.numberOfBlocks=numberOfBlocks;
+        this.setting=setting;
+        this.roles=roles;
+        this.cumulativeWeights=cumulativeWeights;
+    }
+
+    static BlockSelection uniform(int numberOfBlocks) {
+        return new BlockSelection(numberOfBlocks, null, null, null);
+    }
+
+    /**
+     * @param weights the weight of each block
+     */
+    static BlockSelection weighted(int[] weights) {
+        final int[] cumulativeWeights=new int[weights.length];
+        int totalWeight=0;
+        for (int i=0; i < weights.length; i++) {
+            totalWeight=Math.addExact(totalWeight, weights[i]);
+            cumulativeWeights[i]=totalWeight;
+        }
+        return new BlockSelection(weights.length, weights.clone(), null, cumulativeWeights);
+    }
+
+    /**
+     * @param times the number of threads of each block (role)
+     */
+    static BlockSelection roles(int[] times) {
+        final int[] roles=new int[Arrays.stream(times).sum()];
+        int thread=0;
+        for (int block=0; block < times.length; block++) {
+            for (int i=0; i < times[block]; i++) {
+                roles[thread++]=block;
+            }
+        }
+        return new BlockSelection(times.length, times.clone(), roles, null);
+    }
+
+    /**
+     * @return {@code true} if each block is chosen with the same probability.
+     */
+    boolean isUniform() {
+        return setting == null;
+    }
+
+    /**
+     * @return {@code true} if each thread executes always the same block.
+     */
+    boolean hasRoles() {
+        return roles != null;
+    }
+
+    /**
+     * @return the number of threads necessary for all roles (or {@code 0} without roles).
+     */
+    int numberOfRoles() {
+        return roles != null ? roles.length : 0;
+    }
+
+    /**
+     * @return {@code false} if a block has been removed (weight or times {@code 0}, see {@link Shrinker}). Such a
+     * selection could not be declared by {@link ThreadSafetyVerifier#weight(int)} or
+     * {@link ThreadSafetyVerifier#times(int)}, so an iteration using it could not be replayed by it's seed.
+     */
+    boolean isDeclarable() {
+        return setting == null || Arrays.stream(setting).allMatch(value -> value > 0);
+    }
+
+    /**
+     * Chooses the block of the next operation.
+     *
+     * @param worker the worker (thread) index
+     * @param random the random generator of the worker
+     *
+     * @return the block index
+     */
+    int choose(int worker, SplittableRandom random) {
+        if (roles != null) {
+            return roles[worker % roles.length];
+        }
+        if (cumulativeWeights != null) {
+            final int value=random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int idx=Arrays.binarySearch(cumulativeWeights, value + 1);
+            if (idx < 0) {
+                return -idx - 1;
+            }
+            // skip blocks with weight 0 (removed while shrinking)
+            while (idx > 0 && cumulativeWeights[idx - 1] == cumulativeWeights[idx]) {
+                idx--;
+            }
+            return idx;
+        }
+        return random.nextInt(numberOfBlocks);
+    }
+
+    @Override
+    public String toString() {
+        if (setting == null) {
+            return "uniform";
+        }
+        return (roles != null ? "times " : "weights ") + Arrays.toString(setting);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ContentionProfile is the result of {@link ThreadSafetyVerifier#profileContention()}. It contains the blocked
+ * (entering a monitor) and waited ({@code wait()}, {@code park()} etc.) counts and times of the workers while executing
+ * their operations, per iteration, per worker and in total.
+ * <br><br>
+ * The lock samples count, how often a worker has been seen blocked on or waiting for a lock, grouped by the class of
+ * the lock and the first frame outside of the JDK (usually the code of the subject). The times are only available,
+ * if the JVM supports thread contention monitoring (see {@link #isTimeMeasured()}).
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ContentionProfile {
+    private final List<Counts> iterations;
+    private final List<Counts> workers;
+    private final Counts total;
+    private final Map<String, Long> lockSamples;
+    private final Map<Integer, Map<String, Long>> lockSamplesPerIteration;
+    private final long numberOfSamples;
+    private final boolean timeMeasured;
+
+    private ContentionProfile(Builder builder) {
+        this.iterations=Collections.unmodifiableList(new ArrayList<>(builder.iterations));
+        this.workers=Collections.unmodifiableList(new ArrayList<>(builder.workers));
+        this.total=builder.total;
+        this.lockSamples=Collections.unmodifiableMap(sortedByCount(builder.lockSamples));
+        this.lockSamplesPerIteration=new HashMap<>(builder.lockSamplesPerIteration);
+        this.numberOfSamples=builder.numberOfSamples;
+        this.timeMeasured=builder.timeMeasured;
+    }
+
+    private static Map<String, Long> sortedByCount(Map<String, Long> lockSamples) {
+        final List<Map.Entry<String, Long>> entries=new ArrayList<>(lockSamples.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        final Map<String, Long> sorted=new LinkedHashMap<>();
+        entries.forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * @return the counts of each iteration (summed over all workers).
+     */
+    public List<Counts> getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the counts of each worker (summed over all iterations).
+     */
+    public List<Counts> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return the counts of all workers and iterations.
+     */
+    public Counts getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of samples of each lock (and location), the most frequent first.
+     */
+    public Map<String, Long> getLockSamples() {
+        return lockSamples;
+    }
+
+    /**
+     * @param iteration the iteration number (starting with 0)
+     *
+     * @return the number of samples of each lock (and location) within the iteration, the most frequent first.
+     */
+    public Map<String, Long> getLockSamples(int iteration) {
+        return Collections.unmodifiableMap(
+            sortedByCount(lockSamplesPerIteration.getOrDefault(iteration, Collections.emptyMap()))
+        );
+    }
+
+    /**
+     * @return the number of all samples (incl. samples without any blocked or waiting worker).
+     */
+    public long getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    /**
+     * @return {@code true} if the blocked and waited times have been measured.
+     */
+    public boolean isTimeMeasured() {
+        return timeMeasured;
+    }
+
+    /**
+     * @return the profile (per worker and the lock samples) as (human readable) text table.
+     */
+    public String toTable() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(String.format(Locale.ROOT, "%8s %12s %12s %12s %12s%n",
+            "worker", "blocked", "blocked(ms)", "waited", "waited(ms)"));
+        for (int worker=0; worker < workers.size(); worker++) {
+            appendCounts(stringBuilder, String.valueOf(worker), workers.get(worker));
+        }
+        appendCounts(stringBuilder, "total", total);
+        stringBuilder.append(String.format(Locale.ROOT, "%nLock samples (%d samples):%n", numberOfSamples));
+        lockSamples.forEach((lock, samples) ->
+            stringBuilder.append(String.format(Locale.ROOT, "%10d %s%n", samples, lock))
+        );
+        return stringBuilder.toString();
+    }
+
+    private void appendCounts(StringBuilder stringBuilder, String worker, Counts counts) {
+        stringBuilder.append(String.format(Locale.ROOT, "%8s %12d %12s %12d %12s%n",
+            worker,
+            counts.getBlockedCount(),
+            timeMeasured ? String.valueOf(counts.getBlockedTime().toMillis()) : "-",
+            counts.getWaitedCount(),
+            timeMeasured ? String.valueOf(counts.getWaitedTime().toMillis()) : "-"
+        ));
+    }
+
+    @Override
+    public String toString() {
+        return "ContentionProfile{" +
+            "total=" + total +
+            ", lockSamples=" + lockSamples +
+            '}';
+    }
+
+    /**
+     * Counts contains the blocked and waited counts and times.
+     */
+    public static final class Counts {
+        private final long blockedCount;
+        private final long blockedMillis;
+        private final long waitedCount;
+        private final long waitedMillis;
+
+        Counts(long blockedCount, long blockedMillis, long waitedCount, long waitedMillis) {
+            this.blockedCount=blockedCount;
+            this.blockedMillis=blockedMillis;
+            this.waitedCount=waitedCount;
+            this.waitedMillis=waitedMillis;
+        }
+
+        Counts plus(Counts other) {
+            return new Counts(
+                blockedCount + other.blockedCount,
+                blockedMillis + other.blockedMillis,
+                waitedCount + other.waitedCount,
+                waitedMillis + other.waitedMillis
+            );
+        }
+
+        /**
+         * @return how often the worker(s) blocked on entering a monitor.
+         */
+        public long getBlockedCount() {
+            return blockedCount;
+        }
+
+        /**
+         * @return the time the worker(s) blocked on entering a monitor.
+         */
+        public Duration getBlockedTime() {
+            return Duration.ofMillis(blockedMillis);
+        }
+
+        /**
+         * @return how often the worker(s) waited (i.e. for a {@link java.util.concurrent.locks.Lock}).
+         */
+        public long getWaitedCount() {
+            return waitedCount;
+        }
+
+        /**
+         * @return the time the worker(s) waited.
+         */
+        public Duration getWaitedTime() {
+            return Duration.ofMillis(waitedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "Counts{" +
+                "blockedCount=" + blockedCount +
+                ", blockedMillis=" + blockedMillis +
+                ", waitedCount=" + waitedCount +
+                ", waitedMillis=" + waitedMillis +
+                '}';
+        }
+    }
+
+    /**
+     * Builder is used by {@link ContentionProfiler} while running the iterations.
+     */
+    static final class Builder {
+        private static final Counts ZERO=new Counts(0L, 0L, 0L, 0L);
+
+        private final List<Counts> iterations=new ArrayList<>();
+        private final List<Counts> workers=new ArrayList<>();
+        private final Map<String, Long> lockSamples=new HashMap<>();
+        private final Map<Integer, Map<String, Long>> lockSamplesPerIteration=new HashMap<>();
+        private Counts total=ZERO;
+        private long numberOfSamples=0;
+        private boolean timeMeasured=false;
+
+        Builder(int numThreads) {
+            for (int i=0; i < numThreads; i++) {
+                workers.add(ZERO);
+            }
+        }
+
+        Builder addIteration(Counts[] countsPerWorker) {
+            Counts iteration=ZERO;
+            for (int worker=0; worker < countsPerWorker.length; worker++) {
+                iteration=iteration.plus(countsPerWorker[worker]);
+                workers.set(worker, workers.get(worker).plus(countsPerWorker[worker]));
+            }
+            iterations.add(iteration);
+            total=total.plus(iteration);
+            return this;
+        }
+
+        Builder addLockSamples(Map<Integer, Map<String, Long>> lockSamplesPerIteration, long numberOfSamples) {
+            lockSamplesPerIteration.forEach((iteration, lockSamples) -> {
+                this.lockSamplesPerIteration.put(iteration, new HashMap<>(lockSamples));
+                lockSamples.forEach((lock, samples) -> this.lockSamples.merge(lock, samples, Long::sum));
+            });
+            this.numberOfSamples+=numberOfSamples;
+            return this;
+        }
+
+        Builder timeMeasured(boolean timeMeasured) {
+            this.timeMeasured=timeMeasured;
+            return this;
+        }
+
+        ContentionProfile build() {
+            return new ContentionProfile(this);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * ContentionProfiler is a (internal) class for {@link ThreadSafetyVerifier}. It profiles the lock contention of the
+ * workers of one {@link VerificationRun} (see {@link ThreadSafetyVerifier#profileContention()}).
+ * <br><br>
+ * Each worker takes a snapshot of it's own blocked and waited counts (and times) right before and after executing
+ * it's operations, so the barriers between the iterations are not counted. The coordinator collects the differences
+ * after the done barrier.
+ * <br><br>
+ * A background thread samples the workers every millisecond: Each worker, which is blocked on or waiting for a lock
+ * (except the barriers of the verifier), is counted by the class of the lock and the first frame outside of the JDK
+ * for the current iteration.
+ * <br><br>
+ * Thread contention monitoring (necessary for the times) is a JVM wide setting. It will be enabled by the first active
+ * profiler and disabled (if it has been disabled before) by the last one.
+ */
+final class ContentionProfiler {
+    private static final long SAMPLE_INTERVAL_NANOS=TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long CLOSE_TIMEOUT_MILLIS=TimeUnit.SECONDS.toMillis(10L);
+    private static final int MAX_STACK_DEPTH=32;
+    private static final String UNKNOWN_LOCATION="<unknown>";
+    private static final AtomicInteger activeProfilers=new AtomicInteger(0);
+    private static volatile boolean contentionMonitoringEnabledBefore;
+
+    private final ThreadMXBean threadMXBean=ManagementFactory.getThreadMXBean();
+    private final boolean timeMeasured;
+    private final AtomicLongArray threadIds;
+    private final ThreadInfo[] snapshots;
+    private final ContentionProfile.Counts[] countsPerWorker;
+    private final ContentionProfile.Builder profile;
+    private final Map<Integer, Map<String, Long>> lockSamples=new HashMap<>();
+    private final Thread sampler;
+    private long numberOfSamples=0;
+    private volatile int iteration=0;
+    private volatile boolean closed=false;
+
+    /**
+     * @param numThreads the number of workers
+     * @param name       the name (prefix) of the sampler thread
+     */
+    ContentionProfiler(int numThreads, String name) {
+        this.timeMeasured=enableContentionMonitoring(threadMXBean);
+        this.threadIds=new AtomicLongArray(numThreads);
+        this.snapshots=new ThreadInfo[numThreads];
+        this.countsPerWorker=new ContentionProfile.Counts[numThreads];
+        this.profile=new ContentionProfile.Builder(numThreads).timeMeasured(timeMeasured);
+        this.sampler=new ThreadSafetyVerifier.TSVThreadFactory(name + "-contention").newThread(this::sampleLocks);
+        this.sampler.setPriority(Thread.NORM_PRIORITY);
+        this.sampler.start();
+    }
+
+    private static boolean enableContentionMonitoring(ThreadMXBean threadMXBean) {
+        if (!threadMXBean.isThreadContentionMonitoringSupported()) {
+            LOGGER.warn("Thread contention monitoring is not supported, so the blocked and waited times are missing.");
+            return false;
+        }
+        synchronized (activeProfilers) {
+            if (activeProfilers.getAndIncrement() == 0) {
+                contentionMonitoringEnabledBefore=threadMXBean.isThreadContentionMonitoringEnabled();
+                threadMXBean.setThreadContentionMonitoringEnabled(true);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers the worker thread (called by the worker itself).
+     */
+    void register(int worker, Thread thread) {
+        threadIds.set(worker, thread.getId());
+    }
+
+    /**
+     * Takes the snapshot before the worker executes it's operations (called by the worker itself).
+     */
+    void beforeExecution(int worker) {
+        snapshots[worker]=threadMXBean.getThreadInfo(threadIds.get(worker));
+    }
+
+    /**
+     * Records the difference to the snapshot after the worker has executed it's operations (called by the worker
+     * itself).
+     */
+    void afterExecution(int worker) {
+        final ThreadInfo before=snapshots[worker];
+        final ThreadInfo after=threadMXBean.getThreadInfo(threadIds.get(worker));
+        if (before == null || after == null) {
+            countsPerWorker[worker]=new ContentionProfile.Counts(0L, 0L, 0L, 0L);
+            return;
+        }
+        countsPerWorker[worker]=new ContentionProfile.Counts(
+            after.getBlockedCount() - before.getBlockedCount(),
+            timeMeasured ? after.getBlockedTime() - before.getBlockedTime() : 0L,
+            after.getWaitedCount() - before.getWaitedCount(),
+            timeMeasured ? after.getWaitedTime() - before.getWaitedTime() : 0L
+        );
+    }
+
+    /**
+     * Collects the counts of all workers (called by the coordinator after the done barrier).
+     */
+    void endIteration() {
+        profile.addIteration(countsPerWorker);
+        iteration++;
+    }
+
+    /**
+     * @return the profile (call after {@link #awaitClosed()}).
+     */
+    ContentionProfile profile() {
+        synchronized (lockSamples) {
+            return profile.addLockSamples(lockSamples, numberOfSamples).build();
+        }
+    }
+
+    private void sampleLocks() {
+        final long[] ids=new long[threadIds.length()];
+        while (!closed) {
+            if (allWorkersRegistered(ids)) {
+                sample(threadMXBean.getThreadInfo(ids, MAX_STACK_DEPTH));
+            }
+            LockSupport.parkNanos(SAMPLE_INTERVAL_NANOS);
+        }
+    }
+
+    private boolean allWorkersRegistered(long[] ids) {
+        for (int i=0; i < ids.length; i++) {
+            ids[i]=threadIds.get(i);
+            if (ids[i] == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void sample(ThreadInfo[] threadInfos) {
+        synchronized (lockSamples) {
+            numberOfSamples++;
+            for (ThreadInfo threadInfo : threadInfos) {
+                if (threadInfo != null && isContended(threadInfo)) {
+                    lockSamples.computeIfAbsent(iteration, ignored -> new HashMap<>())
+                        .merge(describeLock(threadInfo), 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    private static boolean isContended(ThreadInfo threadInfo) {
+        final LockInfo lockInfo=threadInfo.getLockInfo();
+        return lockInfo != null && !SpinParkBarrier.class.getName().equals(lockInfo.getClassName());
+    }
+
+    private static String describeLock(ThreadInfo threadInfo) {
+        return threadInfo.getThreadState() + " on " + threadInfo.getLockInfo().getClassName() + " at " +
+            location(threadInfo.getStackTrace());
+    }
+
+    private static String location(StackTraceElement[] stackTrace) {
+        for (StackTraceElement frame : stackTrace) {
+            final String className=frame.getClassName();
+            if (!(className.startsWith("java.") || className.startsWith("jdk.") || className.startsWith("sun."))) {
+                return frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        return UNKNOWN_LOCATION;
+    }
+
+    /**
+     * Stops the sampler thread, waits for it and restores the thread contention monitoring setting.
+     *
+     * @throws InterruptedException while waiting for the sampler thread.
+     */
+    void awaitClosed() throws InterruptedException {
+        closed=true;
+        try {
+            sampler.join(CLOSE_TIMEOUT_MILLIS);
+        } finally {
+            if (timeMeasured) {
+                synchronized (activeProfilers) {
+                    if (activeProfilers.decrementAndGet() == 0 && !contentionMonitoringEnabledBefore) {
+                        threadMXBean.setThreadContentionMonitoringEnabled(false);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CountingListener is a built-in {@link VerificationListener}, which counts and times runs, iterations, failures
+ * and (optionally) blocks. The counters are lock-free ({@link LongAdder}), so one listener could be shared by
+ * several verifiers and read at any time, i.e. to export the metrics of the verifications.
+ *
+ * <pre>
+ *     final CountingListener metrics=new CountingListener(true);
+ *     ThreadSafetyVerifier.given(...)....listener(metrics).verify();
+ *     export(metrics.getIterationsPerSecond(), metrics.getFailedIterations(), metrics.getMaxStartSkewNanos());
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CountingListener implements VerificationListener {
+    private final boolean countBlocks;
+    private final LongAdder runs=new LongAdder();
+    private final LongAdder runNanos=new LongAdder();
+    private final LongAdder iterations=new LongAdder();
+    private final LongAdder failedIterations=new LongAdder();
+    private final LongAdder operations=new LongAdder();
+    private final LongAdder executionNanos=new LongAdder();
+    private final LongAdder startSkewNanos=new LongAdder();
+    private final LongAccumulator maxStartSkewNanos=new LongAccumulator(Math::max, 0L);
+    private final LongAdder blocks=new LongAdder();
+    private final LongAdder failedBlocks=new LongAdder();
+    private final LongAdder blockNanos=new LongAdder();
+
+    /**
+     * Counts runs, iterations and failures, but not the blocks.
+     */
+    public CountingListener() {
+        this(false);
+    }
+
+    /**
+     * @param countBlocks {@code true} if each executed block should be counted and timed too.
+     */
+    public CountingListener(boolean countBlocks) {
+        this.countBlocks=countBlocks;
+    }
+
+    @Override
+    public boolean isBlockListener() {
+        return countBlocks;
+    }
+
+    @Override
+    public void onRunEnd(String name, int iterations, long elapsedNanos) {
+        this.runs.increment();
+        this.runNanos.add(elapsedNanos);
+    }
+
+    @Override
+    public void onIterationEnd(int iteration, long startSkewNanos, long operations, long executionNanos) {
+        this.iterations.increment();
+        this.operations.add(operations);
+        this.executionNanos.add(executionNanos);
+        this.startSkewNanos.add(startSkewNanos);
+        this.maxStartSkewNanos.accumulate(startSkewNanos);
+    }
+
+    @Override
+    public void onFailure(int iteration, AssertionError failure) {
+        this.failedIterations.increment();
+    }
+
+    @Override
+    public void onBlockEnd(int worker, int blockIdx, long nanos, boolean ok) {
+        this.blocks.increment();
+        this.blockNanos.add(nanos);
+        if (!ok) {
+            this.failedBlocks.increment();
+        }
+    }
+
+    /**
+     * @return the number of finished runs.
+     */
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    /**
+     * @return the number of iterations.
+     */
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    /**
+     * @return the number of failed iterations.
+     */
+    public long getFailedIterations() {
+        return failedIterations.sum();
+    }
+
+    /**
+     * @return the number of executed operations.
+     */
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    /**
+     * @return the number of iterations per second (of the finished runs).
+     */
+    public double getIterationsPerSecond() {
+        final long nanos=runNanos.sum();
+        return nanos == 0 ? 0.0 : getIterations() * 1e9 / nanos;
+    }
+
+    /**
+     * @return the average throughput (operations per second) while the workers executed their operations.
+     */
+    public double getOperationsPerSecond() {
+        final long nanos=executionNanos.sum();
+        return nanos == 0 ? 0.0 : getOperations() * 1e9 / nanos;
+    }
+
+    /**
+     * @return the average start skew in nanoseconds.
+     */
+    public double getAverageStartSkewNanos() {
+        final long numberOfIterations=getIterations();
+        return numberOfIterations == 0 ? 0.0 : (double) startSkewNanos.sum() / numberOfIterations;
+    }
+
+    /**
+     * @return the maximum start skew in nanoseconds.
+     */
+    public long getMaxStartSkewNanos() {
+        return maxStartSkewNanos.get();
+    }
+
+    /**
+     * @return the number of executed blocks (only if blocks are counted).
+     */
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    /**
+     * @return the number of failed blocks (only if blocks are counted).
+     */
+    public long getFailedBlocks() {
+        return failedBlocks.sum();
+    }
+
+    /**
+     * @return the average execution time of a block in nanoseconds (only if blocks are counted).
+     */
+    public double getAverageBlockNanos() {
+        final long numberOfBlocks=getBlocks();
+        return numberOfBlocks == 0 ? 0.0 : (double) blockNanos.sum() / numberOfBlocks;
+    }
+
+    @Override
+    public String toString() {
+        return "CountingListener{" +
+            "runs=" + getRuns() +
+            ", iterations=" + getIterations() +
+            ", failedIterations=" + getFailedIterations() +
+            ", iterationsPerSecond=" + (long) getIterationsPerSecond() +
+            ", operationsPerSecond=" + (long) getOperationsPerSecond() +
+            ", startSkewNanos(avg/max)=" + (long) getAverageStartSkewNanos() + "/" + getMaxStartSkewNanos() +
+            (countBlocks ? ", blocks=" + getBlocks() + ", failedBlocks=" + getFailedBlocks() : "") +
+            '}';
+    }
+}
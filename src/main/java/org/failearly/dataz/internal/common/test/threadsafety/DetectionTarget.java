@@ -0,0 +1,91 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+/**
+ * DetectionTarget is a (internal) class for {@link ThreadSafetyVerifier}. It's the target of the adaptive iteration
+ * count (see {@link ThreadSafetyVerifier#detect(double, double)}).
+ * <br><br>
+ * A race, which shows up with {@code probability} per (effective) iteration, will not show up within {@code n}
+ * independent iterations with {@code (1-probability)^n}. So {@code n = ln(1-confidence) / ln(1-probability)}
+ * effective iterations are necessary to detect the race with the given {@code confidence}. Only iterations, in which
+ * the threads actually overlapped, are effective.
+ */
+final class DetectionTarget {
+    /**
+     * The maximum number of (all) iterations is this factor times the required effective iterations (if not
+     * limited by the time budget).
+     */
+    static final int MAX_ITERATIONS_FACTOR=10;
+
+    private final double probability;
+    private final double confidence;
+    private final long requiredEffectiveIterations;
+
+    DetectionTarget(double probability, double confidence) {
+        if (!(probability > 0.0 && probability < 1.0)) {
+            throw new IllegalArgumentException("0 < probability < 1");
+        }
+        if (!(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException("0 < confidence < 1");
+        }
+        this.probability=probability;
+        this.confidence=confidence;
+        this.requiredEffectiveIterations=(long) Math.ceil(Math.log1p(-confidence) / Math.log1p(-probability));
+    }
+
+    double getProbability() {
+        return probability;
+    }
+
+    double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return the number of effective iterations necessary to reach the target.
+     */
+    long getRequiredEffectiveIterations() {
+        return requiredEffectiveIterations;
+    }
+
+    /**
+     * @return the maximum number of iterations (effective or not), saturated at {@link Integer#MAX_VALUE} (the
+     * iterations are counted by {@code int}).
+     */
+    int getMaxIterations() {
+        if (requiredEffectiveIterations > Integer.MAX_VALUE / MAX_ITERATIONS_FACTOR) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) (requiredEffectiveIterations * MAX_ITERATIONS_FACTOR);
+    }
+
+    /**
+     * @param probability         the probability of a race per iteration
+     * @param effectiveIterations the number of effective iterations
+     *
+     * @return the confidence to detect the race within the effective iterations.
+     */
+    static double confidence(double probability, long effectiveIterations) {
+        return -Math.expm1(effectiveIterations * Math.log1p(-probability));
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionTarget{" +
+            "probability=" + probability +
+            ", confidence=" + confidence +
+            ", requiredEffectiveIterations=" + requiredEffectiveIterations +
+            '}';
+    }
+}
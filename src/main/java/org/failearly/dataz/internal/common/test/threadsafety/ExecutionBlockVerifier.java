@@ -13,16 +13,11 @@
 package org.failearly.dataz.internal.common.test.threadsafety;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.failearly.dataz.internal.common.test.threadsafety.BlockResult.caughtUnexpectedException;
-import static org.failearly.dataz.internal.common.test.threadsafety.BlockResult.ok;
 import static org.junit.Assert.fail;
 
 /**
@@ -34,6 +29,8 @@ public final class ExecutionBlockVerifier<T, R> extends ThreadSafetyVerifier<T,
     private Optional<Predicate<R>> verifier=Optional.empty();
     private Optional<Consumer<List<R>>> assertResultsList =Optional.empty();
     private Optional<Consumer<Set<R>>> assertResultsSet =Optional.empty();
+    private final Map<R, Expect> outcomeExpectations=new HashMap<>();
+    private Optional<Expect> otherOutcomes=Optional.empty();
 
 
     ExecutionBlockVerifier(Supplier<T> supplier) {
@@ -90,6 +87,8 @@ public final class ExecutionBlockVerifier<T, R> extends ThreadSafetyVerifier<T,
 
     /**
      * Assert the entire result list. You can use every assertion function (i.e. {@link org.junit.Assert})
+     * <br><br>
+     * The list will be reused for the next iteration, so do not keep a reference to it.
      *
      * @param assertResultList the assert function.
      *
@@ -101,7 +100,9 @@ public final class ExecutionBlockVerifier<T, R> extends ThreadSafetyVerifier<T,
     }
 
     /**
-     * Assert the entire result list. You can use every assertion function (i.e. {@link org.junit.Assert})
+     * Assert the entire result set. You can use every assertion function (i.e. {@link org.junit.Assert})
+     * <br><br>
+     * The set will be reused for the next iteration, so do not keep a reference to it.
      *
      * @param assertResultSet the assert function.
      *
@@ -112,6 +113,46 @@ public final class ExecutionBlockVerifier<T, R> extends ThreadSafetyVerifier<T,
         return this;
     }
 
+    /**
+     * Declare the expectation of outcomes (results of the execution blocks). Instead of collecting the results, each
+     * distinct outcome will be counted across all iterations (see {@link VerificationReport#getOutcomes()}). An
+     * iteration fails, if a {@link Expect#FORBIDDEN} outcome has been observed.
+     * <br><br>
+     * Undeclared outcomes are forbidden, unless {@link #otherOutcomes(Expect)} is used.
+     *
+     * @param expect   the expectation
+     * @param outcomes the outcomes
+     *
+     * @return this
+     */
+    @SafeVarargs
+    public final ExecutionBlockVerifier<T, R> expectOutcome(Expect expect, R... outcomes) {
+        if (expect == null) {
+            throw new IllegalArgumentException("Expect must not be null.");
+        }
+        for (R outcome : outcomes) {
+            this.outcomeExpectations.put(outcome, expect);
+        }
+        return this;
+    }
+
+    /**
+     * Declare the expectation of all undeclared outcomes. The default is {@link Expect#FORBIDDEN}.
+     *
+     * @param expect the expectation
+     *
+     * @return this
+     *
+     * @see #expectOutcome(Expect, Object[])
+     */
+    public ExecutionBlockVerifier<T, R> otherOutcomes(Expect expect) {
+        if (expect == null) {
+            throw new IllegalArgumentException("Expect must not be null.");
+        }
+        this.otherOutcomes=Optional.of(expect);
+        return this;
+    }
+
     /**
      * Convert the result list to a result set.
      * @param results the result List
@@ -130,51 +171,75 @@ public final class ExecutionBlockVerifier<T, R> extends ThreadSafetyVerifier<T,
             throw new IllegalArgumentException("Missing execution block! Please use when() with an appropriate " +
                 "execution block.");
         }
-        if (!(verifier.isPresent() || assertResultsList.isPresent() || assertResultsSet.isPresent())) {
-            throw new IllegalArgumentException("Missing verifier, assertResultSet or assertResultsList!");
+        if (!(verifier.isPresent() || assertResultsList.isPresent() || assertResultsSet.isPresent() || countsOutcomes() || hasArbiter())) {
+            throw new IllegalArgumentException("Missing verifier, assertResultSet, assertResultsList, expectOutcome or arbiter!");
         }
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Override
-    protected BlockResult<R> doExecuteBlock(
-        CountDownLatch startedSignal,
-        CountDownLatch doneSignal,
-        T initialValue
-    ) throws InterruptedException {
-        final int idx=nextRandomIdx(executionBlocks.size());
-        startedSignal.countDown();
-        LOGGER.debug("Thread {} has been started.", Thread.currentThread().getName());
-        startedSignal.await();
+    int numberOfBlocks() {
+        return executionBlocks.size();
+    }
+
+    @Override
+    ResultSlots<R> newResultSlots(int numThreads, int operationsPerThread, Optional<OutcomeHistogram<R>> outcomes) {
+        return ResultSlots.withValues(numThreads, operationsPerThread, outcomes.orElse(null));
+    }
+
+    @Override
+    Optional<OutcomeHistogram<R>> newOutcomeHistogram() {
+        if (countsOutcomes()) {
+            return Optional.of(new OutcomeHistogram<>(outcomeExpectations, otherOutcomes.orElse(Expect.FORBIDDEN)));
+        }
+        return Optional.empty();
+    }
+
+    private boolean countsOutcomes() {
+        return !outcomeExpectations.isEmpty() || otherOutcomes.isPresent();
+    }
+
+    @Override
+    protected boolean doExecuteBlock(int blockIdx, T sharedInstance, ResultSlots<R> results, int slot) {
         try {
-            return ok(executionBlocks.get(idx).apply(initialValue));
+            results.recordValue(slot, executionBlocks.get(blockIdx).apply(sharedInstance));
+            return true;
         } catch (Throwable ex) {
-            LOGGER.debug("Unexpected exception caught.", ex);
-            return caughtUnexpectedException(ex);
-        } finally {
-            doneSignal.countDown();
-            LOGGER.debug("Thread {} has been done.", Thread.currentThread().getName());
+            results.recordFailure(slot, caughtUnexpectedException(ex));
+            return false;
         }
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Override
-    protected void doVerifyResults(List<Future<BlockResult<R>>> results) {
-        final List<R> allResults=results.stream()
-            .map(this::toBlockResult)
-            .map(BlockResult::getValue)
-            .filter(Optional::isPresent)
-            .flatMap(ov -> Stream.of(ov.get()))
-            .collect(Collectors.toList());
+    protected void doVerifyResults(ResultSlots<R> results) {
+        if (results.outcomes().isPresent()) {
+            countOutcomes(results, results.outcomes().get());
+        }
         if (this.verifier.isPresent()) {
-            final Predicate<R> notVerifier=this.verifier.get().negate();
-            allResults.stream()
-                .filter(notVerifier)
-                .findAny()
-                .ifPresent((ov) -> fail("At least one verifier failed"));
+            final Predicate<R> predicate=this.verifier.get();
+            for (int slot=0; slot < results.size(); slot++) {
+                final R value=results.value(slot);
+                if (value != null && results.hasValue(slot) && !predicate.test(value)) {
+                    fail("At least one verifier failed");
+                }
+            }
+        }
+        if (this.assertResultsList.isPresent()) {
+            this.assertResultsList.get().accept(results.values());
         }
-        this.assertResultsList.ifPresent(va -> va.accept(allResults));
-        this.assertResultsSet.ifPresent(va -> va.accept(toSet(allResults)));
+        if (this.assertResultsSet.isPresent()) {
+            this.assertResultsSet.get().accept(results.valueSet());
+        }
+    }
 
+    private static <R> void countOutcomes(ResultSlots<R> results, OutcomeHistogram<R> outcomes) {
+        int forbiddenSlot=-1;
+        for (int slot=0; slot < results.size(); slot++) {
+            if (results.hasValue(slot) && outcomes.count(results.value(slot)) == Expect.FORBIDDEN && forbiddenSlot < 0) {
+                forbiddenSlot=slot;
+            }
+        }
+        if (forbiddenSlot >= 0) {
+            fail("Forbidden outcome " + results.value(forbiddenSlot) + " observed.\n\n" + outcomes.toTable());
+        }
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+/**
+ * Expect is the classification of an outcome (see {@link ExecutionBlockVerifier#expectOutcome(Expect, Object[])}).
+ */
+public enum Expect {
+    /**
+     * The outcome is acceptable.
+     */
+    ACCEPTABLE,
+    /**
+     * The outcome is acceptable, but interesting (i.e. a weak interleaving). It's frequency will be reported.
+     */
+    ACCEPTABLE_INTERESTING,
+    /**
+     * The outcome is not acceptable: The iteration fails.
+     */
+    FORBIDDEN
+}
@@ -0,0 +1,162 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * HangDiagnostics is a (internal) class for {@link ThreadSafetyVerifier}. It creates the report of the watchdog, if
+ * an iteration has not been finished in time (see {@link ThreadSafetyVerifier#iterationTimeout(Duration)}).
+ * <br><br>
+ * The report contains
+ * <ul>
+ *    <li>the deadlocked threads ({@link ThreadMXBean#findDeadlockedThreads()}) with the locks and their owners,</li>
+ *    <li>the stack dumps of the stuck worker threads (all workers, which did not arrive at the done barrier).</li>
+ * </ul>
+ */
+final class HangDiagnostics {
+    private static final String BARRIER_CLASS=SpinParkBarrier.class.getName();
+
+    private final ThreadMXBean threadMXBean=ManagementFactory.getThreadMXBean();
+    private final List<Thread> stuckWorkers=new ArrayList<>();
+    private final Set<Long> deadlockedThreadIds=new HashSet<>();
+    private final StringBuilder report=new StringBuilder();
+
+    private HangDiagnostics() {
+    }
+
+    /**
+     * Analyses the worker threads.
+     *
+     * @param iteration the iteration number
+     * @param timeout   the iteration timeout
+     * @param workers   the worker threads
+     *
+     * @return the diagnostics
+     */
+    static HangDiagnostics analyse(int iteration, Duration timeout, Thread[] workers) {
+        final HangDiagnostics diagnostics=new HangDiagnostics();
+        diagnostics.report.append("\n\nWatchdog: Iteration no ")
+            .append(iteration)
+            .append(" has not been finished within ")
+            .append(timeout)
+            .append(".");
+        diagnostics.appendDeadlockedThreads();
+        diagnostics.appendStuckWorkers(workers);
+        return diagnostics;
+    }
+
+    /**
+     * @return number of worker threads, which did not arrive at the done barrier.
+     */
+    int getNumberOfStuckWorkers() {
+        return stuckWorkers.size();
+    }
+
+    /**
+     * @return the report
+     */
+    String getReport() {
+        return report.toString();
+    }
+
+    private void appendDeadlockedThreads() {
+        final long[] threadIds=threadMXBean.isSynchronizerUsageSupported()
+            ? threadMXBean.findDeadlockedThreads()
+            : threadMXBean.findMonitorDeadlockedThreads();
+        if (threadIds == null) {
+            report.append("\n\nNo deadlock detected.");
+            return;
+        }
+
+        report.append("\n\nDeadlock detected (").append(threadIds.length).append(" threads):");
+        for (long threadId : threadIds) {
+            deadlockedThreadIds.add(threadId);
+        }
+        for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(threadIds, true, true)) {
+            if (threadInfo != null) {
+                appendThreadInfo(threadInfo);
+            }
+        }
+    }
+
+    private void appendStuckWorkers(Thread[] workers) {
+        for (Thread worker : workers) {
+            if (worker != null && isStuck(worker.getStackTrace())) {
+                stuckWorkers.add(worker);
+            }
+        }
+
+        report.append("\n\nStuck worker threads (").append(stuckWorkers.size()).append("):");
+        for (Thread worker : stuckWorkers) {
+            if (deadlockedThreadIds.contains(worker.getId())) {
+                report.append("\n\n\"").append(worker.getName()).append("\" deadlocked (see above)");
+                continue;
+            }
+            final ThreadInfo threadInfo=threadMXBean.getThreadInfo(new long[]{worker.getId()}, true, true)[0];
+            if (threadInfo != null) {
+                appendThreadInfo(threadInfo);
+            } else {
+                appendStackTrace(worker);
+            }
+        }
+    }
+
+    private static boolean isStuck(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            if (BARRIER_CLASS.equals(element.getClassName())) {
+                return false;
+            }
+        }
+        return stackTrace.length > 0;
+    }
+
+    private void appendThreadInfo(ThreadInfo threadInfo) {
+        report.append("\n\n\"").append(threadInfo.getThreadName()).append("\" ").append(threadInfo.getThreadState());
+        if (threadInfo.getLockName() != null) {
+            report.append(" on ").append(threadInfo.getLockName());
+        }
+        if (threadInfo.getLockOwnerName() != null) {
+            report.append(" owned by \"").append(threadInfo.getLockOwnerName()).append("\"");
+        }
+
+        final StackTraceElement[] stackTrace=threadInfo.getStackTrace();
+        for (int depth=0; depth < stackTrace.length; depth++) {
+            report.append("\n\tat ").append(stackTrace[depth]);
+            for (MonitorInfo monitorInfo : threadInfo.getLockedMonitors()) {
+                if (monitorInfo.getLockedStackDepth() == depth) {
+                    report.append("\n\t- locked ").append(monitorInfo);
+                }
+            }
+        }
+        for (LockInfo lockInfo : threadInfo.getLockedSynchronizers()) {
+            report.append("\n\t- locked synchronizer ").append(lockInfo);
+        }
+    }
+
+    private void appendStackTrace(Thread thread) {
+        report.append("\n\n\"").append(thread.getName()).append("\" ").append(thread.getState());
+        for (StackTraceElement element : thread.getStackTrace()) {
+            report.append("\n\tat ").append(element);
+        }
+    }
+}
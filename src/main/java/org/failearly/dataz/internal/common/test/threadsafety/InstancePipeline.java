@@ -0,0 +1,184 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * InstancePipeline is a (internal) class for {@link ThreadSafetyVerifier}. It supplies the shared instances of one
+ * {@link VerificationRun} (see {@link ThreadSafetyVerifier#prepareAhead(int)} and
+ * {@link ThreadSafetyVerifier#cleanup(ThreadSafetyVerifier.Cleanup)}).
+ * <br><br>
+ * Without preparing ahead, the instances are created by the coordinator thread. Otherwise a background thread
+ * creates the instances ahead into a bounded queue, while the current iteration runs. A failure of the supplier is
+ * passed through the queue and rethrown by {@link #take()}.
+ * <br><br>
+ * Used instances are cleaned up on a background thread. {@link #awaitClosed()} cleans up the instances prepared, but not
+ * used and waits for all cleanups.
+ */
+final class InstancePipeline<T> {
+    private static final long CLOSE_TIMEOUT_SECONDS=10L;
+
+    private final Supplier<T> supplier;
+    private final ThreadSafetyVerifier.Cleanup<T> cleanup;
+    private final BlockingQueue<Prepared<T>> preparedInstances;
+    private final ExecutorService preparer;
+    private final ExecutorService cleaner;
+
+    private volatile boolean closed=false;
+
+    /**
+     * @param supplier     the supplier of the shared instances
+     * @param prepareAhead number of instances to prepare ahead ({@code 0} = no background thread)
+     * @param cleanup      the cleanup of used instances ({@code null} = no cleanup)
+     * @param name         the name (prefix) of the background threads
+     */
+    InstancePipeline(Supplier<T> supplier, int prepareAhead, ThreadSafetyVerifier.Cleanup<T> cleanup, String name) {
+        this.supplier=supplier;
+        this.cleanup=cleanup;
+        if (prepareAhead > 0) {
+            this.preparedInstances=new ArrayBlockingQueue<>(prepareAhead);
+            this.preparer=Executors.newSingleThreadExecutor(backgroundThreadFactory(name + "-prepare"));
+            this.preparer.execute(this::prepareInstances);
+        } else {
+            this.preparedInstances=null;
+            this.preparer=null;
+        }
+        this.cleaner=cleanup != null
+            ? Executors.newSingleThreadExecutor(backgroundThreadFactory(name + "-cleanup"))
+            : null;
+    }
+
+    private static ThreadFactory backgroundThreadFactory(String name) {
+        final ThreadFactory threadFactory=new ThreadSafetyVerifier.TSVThreadFactory(name);
+        return runnable -> {
+            final Thread thread=threadFactory.newThread(runnable);
+            thread.setPriority(Thread.NORM_PRIORITY);
+            return thread;
+        };
+    }
+
+    /**
+     * @return the next shared instance.
+     *
+     * @throws InterruptedException while waiting for a prepared instance.
+     */
+    T take() throws InterruptedException {
+        if (preparedInstances == null) {
+            return supplier.get();
+        }
+        return preparedInstances.take().get();
+    }
+
+    /**
+     * Cleans up the (used) instance asynchronously.
+     *
+     * @param instance the instance
+     */
+    void release(T instance) {
+        if (cleaner != null) {
+            cleaner.execute(() -> doCleanup(instance));
+        }
+    }
+
+    /**
+     * Stops preparing, cleans up the prepared, but unused instances and waits for all cleanups.
+     *
+     * @throws InterruptedException while waiting for the background threads.
+     */
+    void awaitClosed() throws InterruptedException {
+        closed=true;
+        if (preparer != null) {
+            preparer.shutdownNow();
+            awaitTermination(preparer, "preparing");
+            final List<Prepared<T>> unused=new ArrayList<>();
+            preparedInstances.drainTo(unused);
+            for (Prepared<T> prepared : unused) {
+                if (prepared.instance != null) {
+                    release(prepared.instance);
+                }
+            }
+        }
+        if (cleaner != null) {
+            cleaner.shutdown();
+            awaitTermination(cleaner, "cleaning up");
+        }
+    }
+
+    private void prepareInstances() {
+        while (!closed) {
+            final Prepared<T> prepared=prepare();
+            try {
+                preparedInstances.put(prepared);
+            } catch (InterruptedException ex) {
+                if (prepared.instance != null) {
+                    release(prepared.instance);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Prepared<T> prepare() {
+        try {
+            return new Prepared<>(supplier.get(), null);
+        } catch (RuntimeException | Error ex) {
+            return new Prepared<>(null, ex);
+        }
+    }
+
+    private void doCleanup(T instance) {
+        try {
+            cleanup.apply(instance);
+        } catch (Throwable ex) {
+            LOGGER.warn("Cleanup of shared instance failed.", ex);
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executorService, String activity) throws InterruptedException {
+        if (!executorService.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("Timeout while {} shared instances.", activity);
+        }
+    }
+
+    private static final class Prepared<T> {
+        private final T instance;
+        private final Throwable failure;
+
+        private Prepared(T instance, Throwable failure) {
+            this.instance=instance;
+            this.failure=failure;
+        }
+
+        private T get() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return instance;
+        }
+    }
+}
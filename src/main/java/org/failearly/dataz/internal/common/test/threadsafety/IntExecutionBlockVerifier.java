@@ -0,0 +1,104 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Description see {@link ThreadSafetyVerifier#givenInt(Supplier)}.
+ */
+@SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "WeakerAccess"})
+public final class IntExecutionBlockVerifier<T> extends PrimitiveExecutionBlockVerifier<T, IntExecutionBlockVerifier<T>> {
+    private Optional<Consumer<int[]>> assertResults=Optional.empty();
+
+    IntExecutionBlockVerifier(Supplier<T> supplier) {
+        super(supplier);
+    }
+
+    /**
+     * Used by {@link #when(IntExecutionBlock)}.
+     */
+    @FunctionalInterface
+    public interface IntExecutionBlock<T> {
+        int apply(T sharedVar) throws Throwable;
+    }
+
+    /**
+     * Add a (mandatory) execution block.
+     *
+     * @param executionBlock the execution block (returning int)
+     *
+     * @return this
+     */
+    public IntExecutionBlockVerifier<T> when(IntExecutionBlock<T> executionBlock) {
+        if (executionBlock == null) {
+            throw new IllegalArgumentException("Execution block must not be null.");
+        }
+        return addExecutionBlock(executionBlock::apply);
+    }
+
+    /**
+     * Alias for {@link #when(IntExecutionBlock)}.
+     *
+     * @param executionBlock the execution block (returning int)
+     *
+     * @return this
+     */
+    public IntExecutionBlockVerifier<T> or(IntExecutionBlock<T> executionBlock) {
+        return when(executionBlock);
+    }
+
+    /**
+     * The predicate will be used to check each result for correctness. If one return false, the (shared) object is
+     * not thread safe.
+     *
+     * @param predicate the predicate, verifying the result of the execution block {@link #when(IntExecutionBlock)}.
+     *
+     * @return this
+     */
+    public IntExecutionBlockVerifier<T> then(IntPredicate predicate) {
+        return addVerifier(value -> predicate.test((int) value));
+    }
+
+    /**
+     * Assert all results of an iteration. You can use every assertion function (i.e. {@link org.junit.Assert})
+     *
+     * @param assertResults the assert function.
+     *
+     * @return this
+     */
+    public IntExecutionBlockVerifier<T> thenAssertResults(Consumer<int[]> assertResults) {
+        this.assertResults=Optional.ofNullable(assertResults);
+        return this;
+    }
+
+    @Override
+    boolean hasResultsAssertion() {
+        return assertResults.isPresent();
+    }
+
+    @Override
+    void doAssertResults(ResultSlots<Long> results) {
+        if (assertResults.isPresent()) {
+            final long[] values=toLongArray(results);
+            final int[] intValues=new int[values.length];
+            for (int i=0; i < values.length; i++) {
+                intValues[i]=(int) values[i];
+            }
+            assertResults.get().accept(intValues);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadFactory;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * InterleavingExplorer is a (internal) class for {@link ThreadSafetyVerifier}. It explores the interleavings of the
+ * workers systematically (see {@link ThreadSafetyVerifier#exploreInterleavings(int, int)}).
+ * <br><br>
+ * The block choices are made once (from the seed), so each interleaving executes the same operations. Each
+ * interleaving runs on a new shared instance and new worker threads under the control of an
+ * {@link InterleavingScheduler}: the workers switch at the {@link Interleavings#switchPoint(String) switch points} of
+ * the subject and between their operations. After all workers have finished, the results are verified and the arbiter
+ * runs, like after an iteration of a {@link VerificationRun}.
+ * <br><br>
+ * The interleavings are explored depth first with a bounded number of context switches (most races need only one or
+ * two context switches): each interleaving changes the last decision of the previous one, which has an alternative
+ * within the bound. The exploration stops at the first failing interleaving, after all interleavings within the bound
+ * or after the maximum number of interleavings. Each interleaving counts as iteration of the report.
+ * <br><br>
+ * The subject must be deterministic: the same schedule must reach the same switch points.
+ */
+final class InterleavingExplorer<T, R> {
+    private static final int MAX_BLOCK_CHOICES_SHOWN=100;
+
+    private final ThreadSafetyVerifier<T, R, ?> verifier;
+    private final VerificationSettings settings;
+    private final int numThreads;
+    private final int operationsPerThread;
+    private final int maxContextSwitches;
+    private final int maxInterleavings;
+    private final int[][] blockChoices;
+    private final Optional<OutcomeHistogram<R>> outcomes;
+    private final ThreadFactory threadFactory;
+    private final VerificationReport.Builder report;
+    private final VerificationListener listener;
+    private InstancePipeline<T> instancePipeline;
+    private int interleavings=0;
+    private long subjectSwitchPoints=0;
+
+    InterleavingExplorer(
+        ThreadSafetyVerifier<T, R, ?> verifier,
+        VerificationSettings settings,
+        int maxContextSwitches,
+        int maxInterleavings,
+        VerificationReport.Builder report
+    ) {
+        this.verifier=verifier;
+        this.settings=settings;
+        this.numThreads=settings.numThreads;
+        this.operationsPerThread=settings.operationsPerThread;
+        this.maxContextSwitches=maxContextSwitches;
+        this.maxInterleavings=maxInterleavings;
+        this.blockChoices=chooseBlocks(settings);
+        this.outcomes=verifier.newOutcomeHistogram();
+        this.threadFactory=new ThreadSafetyVerifier.TSVThreadFactory(verifier.getName() + "-interleaving");
+        this.report=report.seed(settings.seed);
+        this.listener=settings.listener;
+    }
+
+    private static int[][] chooseBlocks(VerificationSettings settings) {
+        final int[][] blockChoices=new int[settings.numThreads][settings.operationsPerThread];
+        final SplittableRandom random=new SplittableRandom(settings.seed);
+        for (int worker=0; worker < settings.numThreads; worker++) {
+            final SplittableRandom workerRandom=random.split();
+            for (int op=0; op < settings.operationsPerThread; op++) {
+                blockChoices[worker][op]=settings.blockSelection.choose(worker, workerRandom);
+            }
+        }
+        return blockChoices;
+    }
+
+    /**
+     * Explores the interleavings until the first failure.
+     *
+     * @throws Throwable any assertion error or exception
+     */
+    void execute() throws Throwable {
+        instancePipeline=verifier.newInstancePipeline(settings.prepareAhead);
+        listener.onRunStart(verifier.getName(), numThreads, operationsPerThread);
+        Interleavings.activate();
+        final long startNanos=System.nanoTime();
+        try {
+            List<InterleavingScheduler.Decision> prefix=Collections.emptyList();
+            while (true) {
+                final InterleavingScheduler scheduler=doInterleaving(prefix);
+                final Optional<List<InterleavingScheduler.Decision>> nextPrefix=scheduler.nextPrefix(maxContextSwitches);
+                if (!nextPrefix.isPresent()) {
+                    LOGGER.info("Explored all {} interleaving(s) with at most {} context switch(es).",
+                        interleavings, maxContextSwitches);
+                    break;
+                }
+                if (interleavings >= maxInterleavings) {
+                    LOGGER.warn("Stopped exploration after {} interleaving(s), before all interleavings with at " +
+                        "most {} context switch(es) have been explored.", interleavings, maxContextSwitches);
+                    break;
+                }
+                prefix=nextPrefix.get();
+            }
+            outcomes.ifPresent(report::outcomes);
+        } finally {
+            Interleavings.deactivate();
+            warnOnMissingSwitchPoints();
+            final long elapsedNanos=System.nanoTime() - startNanos;
+            report.elapsedNanos(elapsedNanos);
+            listener.onRunEnd(verifier.getName(), interleavings, elapsedNanos);
+            instancePipeline.awaitClosed();
+        }
+    }
+
+    private void warnOnMissingSwitchPoints() {
+        if (subjectSwitchPoints == 0) {
+            LOGGER.warn("No switch point of the subject has been reached in {} interleaving(s), so the threads " +
+                "switched only between their operations. Please mark the shared accesses of the subject with " +
+                "Interleavings.switchPoint().", interleavings);
+        }
+    }
+
+    private InterleavingScheduler doInterleaving(List<InterleavingScheduler.Decision> prefix) throws Throwable {
+        final int num=interleavings++;
+        listener.onIterationStart(num);
+        final T sharedInstance=instancePipeline.take();
+        final ResultSlots<R> results=verifier.newResultSlots(numThreads, operationsPerThread, outcomes);
+        final InterleavingScheduler scheduler=new InterleavingScheduler(numThreads, prefix);
+        try {
+            final Thread[] workers=startWorkers(scheduler, sharedInstance, results);
+            final long startNanos=System.nanoTime();
+            scheduler.start();
+            final boolean finished=scheduler.awaitFinished(settings.iterationTimeoutNanos);
+            final long executionNanos=System.nanoTime() - startNanos;
+            subjectSwitchPoints+=scheduler.getSubjectSwitchPoints();
+            if (!finished) {
+                onInterleavingTimeout(num, scheduler, workers);
+            }
+            if (scheduler.hasDiverged()) {
+                LOGGER.warn("Interleaving no {} did not follow it's schedule. Is the subject deterministic?", num);
+            }
+
+            final long executedOperations=results.numberOfExecutedOperations();
+            report.addIteration(0L, executedOperations, executionNanos, true);
+            listener.onIterationEnd(num, 0L, executedOperations, executionNanos);
+            verify(num, scheduler, sharedInstance, results);
+        } catch (AssertionError failure) {
+            listener.onFailure(num, failure);
+            throw failure;
+        } finally {
+            instancePipeline.release(sharedInstance);
+        }
+        return scheduler;
+    }
+
+    private void onInterleavingTimeout(int num, InterleavingScheduler scheduler, Thread[] workers) {
+        final int running=scheduler.getRunning();
+        scheduler.abort();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        throw new AssertionError("\n\nThread " + running + " did not reach the next switch point within the " +
+            "iteration timeout (blocked outside of a switch point?)" + describeInterleaving(num, scheduler));
+    }
+
+    private Thread[] startWorkers(InterleavingScheduler scheduler, T sharedInstance, ResultSlots<R> results) {
+        final Thread[] workers=new Thread[numThreads];
+        for (int i=0; i < numThreads; i++) {
+            final int idx=i;
+            workers[i]=threadFactory.newThread(() -> runWorker(idx, scheduler, sharedInstance, results));
+            workers[i].start();
+        }
+        return workers;
+    }
+
+    private void runWorker(int idx, InterleavingScheduler scheduler, T sharedInstance, ResultSlots<R> results) {
+        Interleavings.manage(scheduler, idx);
+        int op=0;
+        try {
+            scheduler.awaitTurn(idx);
+            for (; op < operationsPerThread; op++) {
+                final int blockIdx=blockChoices[idx][op];
+                if (op == 0) {
+                    scheduler.step(idx, "start operation " + op + " (block " + blockIdx + ")");
+                } else {
+                    scheduler.switchPoint(idx, "start operation " + op + " (block " + blockIdx + ")");
+                }
+                verifier.doExecuteBlock(blockIdx, sharedInstance, results, idx * operationsPerThread + op);
+            }
+        } catch (InterleavingScheduler.ExplorationAbortedException ignored) {
+            // the coordinator reports the aborted interleaving
+        } finally {
+            results.recordExecuted(idx, op);
+            Interleavings.release();
+            scheduler.finish(idx);
+        }
+    }
+
+    private void verify(int num, InterleavingScheduler scheduler, T sharedInstance, ResultSlots<R> results) {
+        verifier.doVerifyForAssertionsAndUnexpectedExceptions(results, () -> describeInterleaving(num, scheduler));
+        try {
+            verifier.doVerifyResults(results);
+        } catch (AssertionError failure) {
+            throw new AssertionError("\n\n" + failure.getMessage() + describeInterleaving(num, scheduler), failure);
+        }
+        verifier.doArbiter(
+            sharedInstance,
+            new ActorResults<>(results, blockChoices),
+            () -> describeInterleaving(num, scheduler)
+        );
+    }
+
+    private String describeInterleaving(int num, InterleavingScheduler scheduler) {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder
+            .append(" in interleaving no ").append(num)
+            .append(" (").append(scheduler.getContextSwitches()).append(" context switch(es)).")
+            .append("\nReplay the exploration with seed(").append(settings.seed).append("L)")
+            .append(".threads(").append(numThreads).append(")")
+            .append(".operationsPerThread(").append(operationsPerThread).append(")")
+            .append(".exploreInterleavings(").append(maxContextSwitches).append(", ").append(maxInterleavings).append(")")
+            .append("\nBlock choices per thread:");
+        for (int i=0; i < numThreads; i++) {
+            stringBuilder.append("\n\t").append(i).append(": ");
+            appendBlockChoices(stringBuilder, blockChoices[i]);
+        }
+        stringBuilder.append("\nSteps:");
+        int stepNo=0;
+        for (String step : scheduler.getSteps()) {
+            if (step.startsWith(InterleavingScheduler.CONTEXT_SWITCH)) {
+                stringBuilder.append("\n\t       ").append(step);
+            } else {
+                stringBuilder.append(String.format(Locale.ROOT, "\n\t%5d. %s", ++stepNo, step));
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    private static void appendBlockChoices(StringBuilder stringBuilder, int[] choices) {
+        final int shown=Math.min(choices.length, MAX_BLOCK_CHOICES_SHOWN);
+        stringBuilder.append('[');
+        for (int op=0; op < shown; op++) {
+            if (op > 0) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(choices[op]);
+        }
+        if (shown < choices.length) {
+            stringBuilder.append(", ... (").append(choices.length - shown).append(" more)");
+        }
+        stringBuilder.append(']');
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InterleavingScheduler is a (internal) class for {@link ThreadSafetyVerifier}. It executes one interleaving of the
+ * managed worker threads (see {@link InterleavingExplorer}): Only one worker runs at a time. At each switch point
+ * (see {@link Interleavings#switchPoint(String)}) and whenever a worker has finished, the scheduler decides which
+ * worker continues.
+ * <br><br>
+ * A decision follows the given schedule prefix (the decisions of a previous interleaving with one decision changed).
+ * Beyond the prefix the running worker continues, if possible (no context switch), otherwise the worker with the
+ * lowest index. A context switch is a decision for another worker, while the running worker could continue.
+ * <br><br>
+ * Only decisions with alternatives are recorded, so the schedule of an interleaving contains exactly the decisions
+ * the exploration could change.
+ */
+final class InterleavingScheduler {
+    private static final int NOBODY=-1;
+    static final String CONTEXT_SWITCH="-- context switch ";
+
+    private final int numThreads;
+    private final List<Decision> prefix;
+    private final List<Decision> decisions=new ArrayList<>();
+    private final List<String> steps=new ArrayList<>();
+    private final boolean[] finished;
+    private int numberOfFinished=0;
+    private int running=NOBODY;
+    private int contextSwitches=0;
+    private int subjectSwitchPoints=0;
+    private boolean diverged=false;
+    private boolean aborted=false;
+
+    /**
+     * @param numThreads the number of workers
+     * @param prefix     the schedule prefix (see {@link #nextPrefix(int)} of the previous interleaving)
+     */
+    InterleavingScheduler(int numThreads, List<Decision> prefix) {
+        this.numThreads=numThreads;
+        this.prefix=prefix;
+        this.finished=new boolean[numThreads];
+    }
+
+    /**
+     * Decides which worker runs first (called by the coordinator).
+     */
+    synchronized void start() {
+        decide(NOBODY);
+    }
+
+    /**
+     * Waits until the worker is allowed to run (called by the worker itself).
+     */
+    synchronized void awaitTurn(int worker) {
+        while (running != worker) {
+            if (aborted) {
+                throw new ExplorationAbortedException();
+            }
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ExplorationAbortedException();
+            }
+        }
+    }
+
+    /**
+     * Records a step of the running worker without any decision (called by the worker itself).
+     */
+    synchronized void step(int worker, String description) {
+        steps.add("thread " + worker + ": " + description);
+    }
+
+    /**
+     * Records the step and decides which worker continues (called by the worker itself).
+     */
+    synchronized void switchPoint(int worker, String description) {
+        step(worker, description);
+        decide(worker);
+        awaitTurn(worker);
+    }
+
+    /**
+     * A switch point of the subject (see {@link Interleavings#switchPoint(String)}).
+     */
+    synchronized void subjectSwitchPoint(int worker, String description) {
+        subjectSwitchPoints++;
+        switchPoint(worker, description);
+    }
+
+    /**
+     * The worker has executed all of it's operations (called by the worker itself).
+     */
+    synchronized void finish(int worker) {
+        step(worker, "finished");
+        finished[worker]=true;
+        numberOfFinished++;
+        if (numberOfFinished == numThreads) {
+            running=NOBODY;
+            notifyAll();
+        } else {
+            decide(NOBODY);
+        }
+    }
+
+    /**
+     * Waits until all workers have finished (called by the coordinator).
+     *
+     * @return {@code false} on timeout.
+     */
+    synchronized boolean awaitFinished(long timeoutNanos) throws InterruptedException {
+        final long deadline=System.nanoTime() + timeoutNanos;
+        while (numberOfFinished < numThreads) {
+            final long remaining=deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Releases all waiting workers, which stop with an {@link ExplorationAbortedException}.
+     */
+    synchronized void abort() {
+        aborted=true;
+        notifyAll();
+    }
+
+    /**
+     * @return the running worker (or {@code -1}).
+     */
+    synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of context switches of this interleaving.
+     */
+    synchronized int getContextSwitches() {
+        return contextSwitches;
+    }
+
+    /**
+     * @return the number of reached switch points of the subject.
+     */
+    synchronized int getSubjectSwitchPoints() {
+        return subjectSwitchPoints;
+    }
+
+    /**
+     * @return {@code true} if the subject did not follow the schedule prefix (not deterministic).
+     */
+    synchronized boolean hasDiverged() {
+        return diverged;
+    }
+
+    /**
+     * @return the executed steps (incl. the context switches) in order of execution.
+     */
+    synchronized List<String> getSteps() {
+        return Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    /**
+     * Depth first: the last decision, which has an alternative within the bound of context switches, will be
+     * changed. All decisions after the changed one are left to the default.
+     *
+     * @param maxContextSwitches the bound of context switches
+     *
+     * @return the schedule prefix of the next interleaving or nothing, if all interleavings have been explored.
+     */
+    synchronized Optional<List<Decision>> nextPrefix(int maxContextSwitches) {
+        for (int i=decisions.size() - 1; i >= 0; i--) {
+            final Optional<Decision> alternative=decisions.get(i).nextAlternative(maxContextSwitches);
+            if (alternative.isPresent()) {
+                final List<Decision> nextPrefix=new ArrayList<>(decisions.subList(0, i));
+                nextPrefix.add(alternative.get());
+                return Optional.of(nextPrefix);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void decide(int current) {
+        final int[] alternatives=alternatives(current);
+        Decision decision=new Decision(alternatives, 0, current, contextSwitches);
+        if (alternatives.length > 1) {
+            final int step=decisions.size();
+            if (step < prefix.size()) {
+                final Decision forced=prefix.get(step);
+                if (Arrays.equals(forced.alternatives, alternatives) && forced.current == current) {
+                    decision=forced;
+                } else {
+                    diverged=true;
+                }
+            }
+            decisions.add(decision);
+        }
+        if (decision.isContextSwitch()) {
+            contextSwitches++;
+            steps.add(CONTEXT_SWITCH + "from thread " + current + " to thread " + decision.chosen());
+        }
+        running=decision.chosen();
+        notifyAll();
+    }
+
+    /**
+     * @return all unfinished workers, the current (if unfinished) first.
+     */
+    private int[] alternatives(int current) {
+        final int[] alternatives=new int[numThreads - numberOfFinished];
+        int i=0;
+        if (current != NOBODY && !finished[current]) {
+            alternatives[i++]=current;
+        }
+        for (int worker=0; worker < numThreads; worker++) {
+            if (!finished[worker] && worker != current) {
+                alternatives[i++]=worker;
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Decision is one scheduling decision with it's alternatives (in order of exploration).
+     */
+    static final class Decision {
+        private final int[] alternatives;
+        private final int index;
+        private final int current;
+        private final int contextSwitchesBefore;
+
+        private Decision(int[] alternatives, int index, int current, int contextSwitchesBefore) {
+            this.alternatives=alternatives;
+            this.index=index;
+            this.current=current;
+            this.contextSwitchesBefore=contextSwitchesBefore;
+        }
+
+        private int chosen() {
+            return alternatives[index];
+        }
+
+        private boolean isContextSwitch() {
+            return isContextSwitch(chosen());
+        }
+
+        private boolean isContextSwitch(int worker) {
+            return current != NOBODY && alternatives[0] == current && worker != current;
+        }
+
+        private Optional<Decision> nextAlternative(int maxContextSwitches) {
+            for (int next=index + 1; next < alternatives.length; next++) {
+                final int contextSwitches=contextSwitchesBefore + (isContextSwitch(alternatives[next]) ? 1 : 0);
+                if (contextSwitches <= maxContextSwitches) {
+                    return Optional.of(new Decision(alternatives, next, current, contextSwitchesBefore));
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Thrown into the waiting workers of an aborted interleaving.
+     */
+    static final class ExplorationAbortedException extends RuntimeException {
+        private static final long serialVersionUID=1L;
+
+        private ExplorationAbortedException() {
+            super("Interleaving exploration aborted.");
+        }
+    }
+}
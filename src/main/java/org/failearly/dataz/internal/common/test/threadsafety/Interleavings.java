@@ -0,0 +1,93 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interleavings provides the switch points for {@link ThreadSafetyVerifier#exploreInterleavings(int)}. A switch point
+ * marks a shared memory access or a synchronization of the subject, where another thread could interfere:
+ *
+ * <pre>
+ *     int incrementAndGet() {
+ *         final int value=counter;
+ *         Interleavings.switchPoint("read counter");
+ *         counter=value + 1;
+ *         return counter;
+ *     }
+ * </pre>
+ *
+ * While exploring interleavings, the scheduler decides at each switch point, which thread continues. Outside of an
+ * exploration (or on any other thread) a switch point does nothing and costs a single volatile read.
+ * <br><br>
+ * Only the marked accesses are explored: without any switch point, the threads switch only between their operations
+ * (a warning will be logged).
+ * <br><br>
+ * Do not place a switch point while holding a lock, another managed thread needs: the other thread would block
+ * outside of any switch point, so the exploration would stop by the iteration timeout.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Interleavings {
+    private static final AtomicInteger activeExplorations=new AtomicInteger(0);
+    private static final ThreadLocal<ManagedThread> managedThread=new ThreadLocal<>();
+
+    private Interleavings() {
+    }
+
+    /**
+     * Marks a switch point of the current thread.
+     *
+     * @param description the description of the switch point (part of the trace of a failing interleaving).
+     */
+    public static void switchPoint(String description) {
+        if (activeExplorations.get() == 0) {
+            return;
+        }
+        final ManagedThread current=managedThread.get();
+        if (current != null) {
+            current.scheduler.subjectSwitchPoint(current.worker, description);
+        }
+    }
+
+    static void activate() {
+        activeExplorations.incrementAndGet();
+    }
+
+    static void deactivate() {
+        activeExplorations.decrementAndGet();
+    }
+
+    /**
+     * Registers the current thread as managed worker (called by the worker itself).
+     */
+    static void manage(InterleavingScheduler scheduler, int worker) {
+        managedThread.set(new ManagedThread(scheduler, worker));
+    }
+
+    /**
+     * Unregisters the current thread (called by the worker itself).
+     */
+    static void release() {
+        managedThread.remove();
+    }
+
+    private static final class ManagedThread {
+        private final InterleavingScheduler scheduler;
+        private final int worker;
+
+        private ManagedThread(InterleavingScheduler scheduler, int worker) {
+            this.scheduler=scheduler;
+            this.worker=worker;
+        }
+    }
+}
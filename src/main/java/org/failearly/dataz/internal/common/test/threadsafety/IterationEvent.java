@@ -0,0 +1,79 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * IterationEvent is the Java Flight Recorder event of one iteration of a {@link VerificationRun}. The event lasts
+ * from the iteration gate until the done barrier, so it could be laid over GC pauses, safepoints and lock events.
+ * <br><br>
+ * Without a running recording, the event will not be created at all (see {@link #isRecorded()}).
+ */
+@Name(IterationEvent.NAME)
+@Label("Thread Safety Iteration")
+@Category({"dataZ", "Thread Safety"})
+@Description("One iteration of a thread safety verification.")
+@StackTrace(false)
+final class IterationEvent extends Event {
+    static final String NAME="org.failearly.dataz.threadsafety.Iteration";
+    private static final EventType EVENT_TYPE=EventType.getEventType(IterationEvent.class);
+
+    @Label("Verifier")
+    String verifier;
+
+    @Label("Iteration")
+    int iteration;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Operations")
+    @Description("Number of executed operations (all threads and shared instances).")
+    long operations;
+
+    @Label("Start Skew")
+    @Description("Time between the first and the last thread released by the start barrier.")
+    @Timespan(Timespan.NANOSECONDS)
+    long startSkew;
+
+    @Label("Failed Operations")
+    @Description("Number of operations, which caught an assertion error or an unexpected exception.")
+    int failedOperations;
+
+    @Label("Failed")
+    @Description("The verification of the iteration failed.")
+    boolean failed;
+
+    @Label("Effective")
+    @Description("All threads overlapped and all operations have been executed.")
+    boolean effective;
+
+    @Label("Block Choices")
+    @Description("The blocks chosen by each thread.")
+    String blockChoices;
+
+    /**
+     * @return {@code true} if the event is enabled within a running recording.
+     */
+    static boolean isRecorded() {
+        return EVENT_TYPE.isEnabled();
+    }
+}
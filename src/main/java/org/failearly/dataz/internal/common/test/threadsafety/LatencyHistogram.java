@@ -0,0 +1,178 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram is a log-linear histogram (in the style of HdrHistogram) of latencies in nanoseconds.
+ * <br><br>
+ * Values below 128 are recorded exactly, larger values with a relative error below 1/64 (~1.6%). Recording does
+ * not allocate anything and is not thread safe: {@link ThreadSafetyVerifier} uses one histogram per thread and
+ * merges them afterwards.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS=7;
+    private static final int SUB_BUCKET_COUNT=1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT=SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT=(Long.SIZE - 1) - (SUB_BUCKET_BITS - 1);
+    private static final int NUMBER_OF_BUCKETS=SUB_BUCKET_COUNT + MAX_SHIFT * HALF_SUB_BUCKET_COUNT;
+
+    private final long[] counts=new long[NUMBER_OF_BUCKETS];
+    private long totalCount=0;
+    private long totalNanos=0;
+    private long minNanos=Long.MAX_VALUE;
+    private long maxNanos=0;
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds (negative values are recorded as {@code 0}).
+     */
+    void record(long nanos) {
+        final long value=Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalNanos+=value;
+        minNanos=Math.min(minNanos, value);
+        maxNanos=Math.max(maxNanos, value);
+    }
+
+    /**
+     * Adds all recorded latencies of {@code other} to this histogram.
+     *
+     * @param other another histogram
+     *
+     * @return this
+     */
+    LatencyHistogram merge(LatencyHistogram other) {
+        for (int i=0; i < NUMBER_OF_BUCKETS; i++) {
+            counts[i]+=other.counts[i];
+        }
+        totalCount+=other.totalCount;
+        totalNanos+=other.totalNanos;
+        minNanos=Math.min(minNanos, other.minNanos);
+        maxNanos=Math.max(maxNanos, other.maxNanos);
+        return this;
+    }
+
+    /**
+     * Removes all recorded latencies.
+     */
+    void reset() {
+        Arrays.fill(counts, 0L);
+        totalCount=0;
+        totalNanos=0;
+        minNanos=Long.MAX_VALUE;
+        maxNanos=0;
+    }
+
+    /**
+     * @return a copy of this histogram.
+     */
+    LatencyHistogram copy() {
+        return new LatencyHistogram().merge(this);
+    }
+
+    /**
+     * @return the number of recorded latencies.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest recorded latency in nanoseconds (or {@code 0}).
+     */
+    public long getMinNanos() {
+        return totalCount == 0 ? 0 : minNanos;
+    }
+
+    /**
+     * @return the largest recorded latency in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the mean of the recorded latencies in nanoseconds.
+     */
+    public double getMeanNanos() {
+        return totalCount == 0 ? 0.0 : (double) totalNanos / totalCount;
+    }
+
+    /**
+     * The latency at the given percentile, i.e. {@code getNanosAtPercentile(99.0)}. The result is the upper bound of
+     * the bucket, which contains the percentile, but not larger then {@link #getMaxNanos()}.
+     *
+     * @param percentile the percentile (0..100)
+     *
+     * @return the latency in nanoseconds.
+     */
+    public long getNanosAtPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("0 <= percentile <= 100");
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final long countAtPercentile=Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulativeCount=0;
+        for (int i=0; i < NUMBER_OF_BUCKETS; i++) {
+            cumulativeCount+=counts[i];
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(Math.max(upperBoundOf(i), getMinNanos()), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+            "count=" + totalCount +
+            ", min=" + getMinNanos() + "ns" +
+            ", mean=" + (long) getMeanNanos() + "ns" +
+            ", p50=" + getNanosAtPercentile(50.0) + "ns" +
+            ", p99=" + getNanosAtPercentile(99.0) + "ns" +
+            ", p99.9=" + getNanosAtPercentile(99.9) + "ns" +
+            ", max=" + maxNanos + "ns" +
+            '}';
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift=(Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        final int subBucket=(int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int offset=index - SUB_BUCKET_COUNT;
+        final int shift=offset / HALF_SUB_BUCKET_COUNT + 1;
+        final long subBucket=offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        final long upperBound=((subBucket + 1) << shift) - 1;
+        return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Description see {@link ThreadSafetyVerifier#givenLong(Supplier)}.
+ */
+@SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "WeakerAccess"})
+public final class LongExecutionBlockVerifier<T> extends PrimitiveExecutionBlockVerifier<T, LongExecutionBlockVerifier<T>> {
+    private Optional<Consumer<long[]>> assertResults=Optional.empty();
+
+    LongExecutionBlockVerifier(Supplier<T> supplier) {
+        super(supplier);
+    }
+
+    /**
+     * Used by {@link #when(LongExecutionBlock)}.
+     */
+    @FunctionalInterface
+    public interface LongExecutionBlock<T> {
+        long apply(T sharedVar) throws Throwable;
+    }
+
+    /**
+     * Add a (mandatory) execution block.
+     *
+     * @param executionBlock the execution block (returning long)
+     *
+     * @return this
+     */
+    public LongExecutionBlockVerifier<T> when(LongExecutionBlock<T> executionBlock) {
+        return addExecutionBlock(executionBlock);
+    }
+
+    /**
+     * Alias for {@link #when(LongExecutionBlock)}.
+     *
+     * @param executionBlock the execution block (returning long)
+     *
+     * @return this
+     */
+    public LongExecutionBlockVerifier<T> or(LongExecutionBlock<T> executionBlock) {
+        return when(executionBlock);
+    }
+
+    /**
+     * The predicate will be used to check each result for correctness. If one return false, the (shared) object is
+     * not thread safe.
+     *
+     * @param predicate the predicate, verifying the result of the execution block {@link #when(LongExecutionBlock)}.
+     *
+     * @return this
+     */
+    public LongExecutionBlockVerifier<T> then(LongPredicate predicate) {
+        return addVerifier(predicate);
+    }
+
+    /**
+     * Assert all results of an iteration. You can use every assertion function (i.e. {@link org.junit.Assert})
+     *
+     * @param assertResults the assert function.
+     *
+     * @return this
+     */
+    public LongExecutionBlockVerifier<T> thenAssertResults(Consumer<long[]> assertResults) {
+        this.assertResults=Optional.ofNullable(assertResults);
+        return this;
+    }
+
+    @Override
+    boolean hasResultsAssertion() {
+        return assertResults.isPresent();
+    }
+
+    @Override
+    void doAssertResults(ResultSlots<Long> results) {
+        if (assertResults.isPresent()) {
+            assertResults.get().accept(toLongArray(results));
+        }
+    }
+}
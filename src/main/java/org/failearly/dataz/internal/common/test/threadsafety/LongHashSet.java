@@ -0,0 +1,163 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Arrays;
+
+/**
+ * LongHashSet is a (internal) class for {@link ThreadSafetyVerifier}. It's a compact set of primitive {@code long}s
+ * (open addressing with linear probing), used i.e. for checking the uniqueness of generated IDs.
+ * <br><br>
+ * The table starts small and doubles, as soon as it's load factor would exceed 0.75, so it's sized by the distinct
+ * values actually added (at most {@code capacity}): {@code 10M} distinct values need {@code 128MB}, {@code 10M}
+ * duplicates of a few values need nearly nothing (a {@code HashSet<Long>} needs more than {@code 500MB} for
+ * {@code 10M} distinct values). {@link #clear()} keeps the grown table, so a reused set does not allocate anything
+ * after it's first use. The value {@code 0} marks an empty entry, so it's tracked separately. Not thread safe.
+ */
+final class LongHashSet {
+    private static final long EMPTY=0L;
+    private static final long GOLDEN_RATIO=0x9E3779B97F4A7C15L;
+    private static final int INITIAL_TABLE_SIZE=16;
+
+    private long[] table;
+    private int mask;
+    private int shift;
+    private int threshold;
+    private final int maxTableSize;
+    private final int capacity;
+    private boolean containsEmpty=false;
+    private int size=0;
+
+    /**
+     * @param capacity the maximum number of values.
+     */
+    LongHashSet(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity >= 0");
+        }
+        this.maxTableSize=tableSizeFor(capacity);
+        this.capacity=capacity;
+        allocate(Math.min(INITIAL_TABLE_SIZE, maxTableSize));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        final long minTableSize=Math.max(2L, (capacity * 4L + 2L) / 3L);
+        if (minTableSize > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        return Integer.highestOneBit((int) minTableSize - 1) << 1;
+    }
+
+    /**
+     * Adds the value.
+     *
+     * @param value any value
+     *
+     * @return {@code true} if the value has not been contained.
+     *
+     * @throws IllegalStateException if the capacity has been exceeded.
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            checkCapacity();
+            containsEmpty=true;
+            size++;
+            return true;
+        }
+        int idx=indexOf(value);
+        while (table[idx] != EMPTY) {
+            if (table[idx] == value) {
+                return false;
+            }
+            idx=(idx + 1) & mask;
+        }
+        checkCapacity();
+        table[idx]=value;
+        size++;
+        if (size > threshold && table.length < maxTableSize) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param value any value
+     *
+     * @return {@code true} if the value is contained.
+     */
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int idx=indexOf(value);
+        while (table[idx] != EMPTY) {
+            if (table[idx] == value) {
+                return true;
+            }
+            idx=(idx + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of values.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all values.
+     */
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(table, EMPTY);
+            containsEmpty=false;
+            size=0;
+        }
+    }
+
+    private void allocate(int tableSize) {
+        this.table=new long[tableSize];
+        this.mask=tableSize - 1;
+        this.shift=Long.SIZE - Integer.numberOfTrailingZeros(tableSize);
+        this.threshold=(int) (tableSize * 3L / 4L);
+    }
+
+    private void grow() {
+        final long[] oldTable=table;
+        allocate(oldTable.length * 2);
+        for (long value : oldTable) {
+            if (value != EMPTY) {
+                int idx=indexOf(value);
+                while (table[idx] != EMPTY) {
+                    idx=(idx + 1) & mask;
+                }
+                table[idx]=value;
+            }
+        }
+    }
+
+    private void checkCapacity() {
+        if (size == capacity) {
+            throw new IllegalStateException("Capacity of " + capacity + " exceeded.");
+        }
+    }
+
+    private int indexOf(long value) {
+        return (int) ((value * GOLDEN_RATIO) >>> shift) & mask;
+    }
+}
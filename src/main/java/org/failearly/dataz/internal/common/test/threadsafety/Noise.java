@@ -0,0 +1,27 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+/**
+ * Noise is the kind of background noise (see {@link ThreadSafetyVerifier#noise(Noise, int)}).
+ */
+public enum Noise {
+    /**
+     * The noise threads allocate (partly surviving) objects, so the garbage collector runs frequently.
+     */
+    ALLOCATION,
+    /**
+     * The noise threads burn CPU, so the workers compete for the processors.
+     */
+    CPU
+}
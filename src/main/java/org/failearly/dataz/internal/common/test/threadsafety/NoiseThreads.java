@@ -0,0 +1,86 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * NoiseThreads is a (internal) class for {@link ThreadSafetyVerifier}. It runs the background noise threads of one
+ * {@link VerificationRun} (see {@link ThreadSafetyVerifier#noise(Noise, int)}).
+ * <br><br>
+ * The noise threads run with normal priority from the start until the end of the run (see {@link #awaitClosed()}).
+ */
+final class NoiseThreads {
+    private static final long CLOSE_TIMEOUT_MILLIS=TimeUnit.SECONDS.toMillis(10L);
+    private static final int ALLOCATION_SIZE=1024;
+    private static final int SURVIVORS=4096;
+
+    private static volatile long sink;
+
+    private final Thread[] threads;
+    private volatile boolean closed=false;
+
+    /**
+     * @param noise      the kind of noise ({@code null} = no noise)
+     * @param numThreads the number of noise threads
+     * @param name       the name (prefix) of the noise threads
+     */
+    NoiseThreads(Noise noise, int numThreads, String name) {
+        if (noise == null) {
+            this.threads=new Thread[0];
+            return;
+        }
+        final ThreadFactory threadFactory=new ThreadSafetyVerifier.TSVThreadFactory(name + "-noise");
+        this.threads=new Thread[numThreads];
+        for (int i=0; i < numThreads; i++) {
+            threads[i]=threadFactory.newThread(noise == Noise.ALLOCATION ? this::allocate : this::burnCpu);
+            threads[i].setPriority(Thread.NORM_PRIORITY);
+            threads[i].start();
+        }
+    }
+
+    private void allocate() {
+        final Object[] survivors=new Object[SURVIVORS];
+        int idx=0;
+        while (!closed) {
+            survivors[idx]=new byte[ALLOCATION_SIZE];
+            idx=(idx + 1) % SURVIVORS;
+        }
+    }
+
+    private void burnCpu() {
+        long value=System.nanoTime();
+        while (!closed) {
+            value=value * 6364136223846793005L + 1442695040888963407L;
+        }
+        sink=value;
+    }
+
+    /**
+     * Stops the noise threads and waits for them.
+     *
+     * @throws InterruptedException while waiting for the noise threads.
+     */
+    void awaitClosed() throws InterruptedException {
+        closed=true;
+        for (Thread thread : threads) {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+            if (thread.isAlive()) {
+                LOGGER.warn("Noise thread {} did not stop in time.", thread.getName());
+            }
+        }
+    }
+}
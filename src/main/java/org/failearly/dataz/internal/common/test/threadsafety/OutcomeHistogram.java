@@ -0,0 +1,187 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * OutcomeHistogram counts each distinct outcome (result of an execution block) across all iterations (see
+ * {@link ExecutionBlockVerifier#expectOutcome(Expect, Object[])}). The memory usage depends only on the number of
+ * declared outcomes, not on the number of iterations: At most {@value #MAX_OTHER_OUTCOMES} distinct undeclared
+ * outcomes are counted separately, all further undeclared outcomes are counted together as other outcomes (see
+ * {@link #getOtherCount()}).
+ * <br><br>
+ * The outcomes are counted by the coordinator thread after all workers have passed the done barrier, so counting
+ * does not interfere with the workers. Not thread safe.
+ *
+ * @param <R> the outcome type
+ */
+@SuppressWarnings("WeakerAccess")
+public final class OutcomeHistogram<R> {
+    /**
+     * The maximum number of distinct undeclared outcomes, which are counted separately.
+     */
+    public static final int MAX_OTHER_OUTCOMES=64;
+
+    private final Map<R, Counter> counters=new HashMap<>();
+    private final Expect otherOutcomes;
+    private final int declaredOutcomes;
+    private long otherCount=0;
+    private long totalCount=0;
+
+    OutcomeHistogram(Map<R, Expect> expectations, Expect otherOutcomes) {
+        expectations.forEach((outcome, expect) -> counters.put(outcome, new Counter(expect)));
+        this.otherOutcomes=otherOutcomes;
+        this.declaredOutcomes=counters.size();
+    }
+
+    private OutcomeHistogram(OutcomeHistogram<R> other) {
+        other.counters.forEach((outcome, counter) -> counters.put(outcome, counter.copy()));
+        this.otherOutcomes=other.otherOutcomes;
+        this.declaredOutcomes=other.declaredOutcomes;
+        this.otherCount=other.otherCount;
+        this.totalCount=other.totalCount;
+    }
+
+    /**
+     * Counts the outcome.
+     *
+     * @param outcome any outcome (incl. {@code null})
+     *
+     * @return the expectation of the outcome.
+     */
+    Expect count(R outcome) {
+        totalCount++;
+        Counter counter=counters.get(outcome);
+        if (counter == null) {
+            if (counters.size() - declaredOutcomes >= MAX_OTHER_OUTCOMES) {
+                otherCount++;
+                return otherOutcomes;
+            }
+            counter=new Counter(otherOutcomes);
+            counters.put(outcome, counter);
+        }
+        counter.count++;
+        return counter.expect;
+    }
+
+    OutcomeHistogram<R> copy() {
+        return new OutcomeHistogram<>(this);
+    }
+
+    /**
+     * @param outcome any outcome
+     *
+     * @return how often the outcome has been observed ({@code 0} for an undeclared outcome, which has been counted
+     * as other outcome).
+     */
+    public long getCount(R outcome) {
+        final Counter counter=counters.get(outcome);
+        return counter != null ? counter.count : 0L;
+    }
+
+    /**
+     * @return the number of undeclared outcomes, which have not been counted separately (because there have been
+     * more than {@value #MAX_OTHER_OUTCOMES} distinct undeclared outcomes).
+     */
+    public long getOtherCount() {
+        return otherCount;
+    }
+
+    /**
+     * @return the number of all observed outcomes.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @param outcome any outcome
+     *
+     * @return the expectation of the outcome (undeclared outcomes are classified by
+     * {@link ExecutionBlockVerifier#otherOutcomes(Expect)}).
+     */
+    public Expect getExpect(R outcome) {
+        final Counter counter=counters.get(outcome);
+        return counter != null ? counter.expect : otherOutcomes;
+    }
+
+    /**
+     * @return all (declared or separately counted) outcomes with their counts, the most frequent first.
+     */
+    public Map<R, Long> getCounts() {
+        final Map<R, Long> counts=new LinkedHashMap<>();
+        for (Map.Entry<R, Counter> entry : sortedByCount()) {
+            counts.put(entry.getKey(), entry.getValue().count);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the histogram as (human readable) text table.
+     */
+    public String toTable() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(String.format(Locale.ROOT, "%-24s %-22s %15s %9s%n",
+            "outcome", "expect", "count", "freq%"));
+        for (Map.Entry<R, Counter> entry : sortedByCount()) {
+            stringBuilder.append(String.format(Locale.ROOT, "%-24s %-22s %15d %8.4f%%%n",
+                entry.getKey(),
+                entry.getValue().expect,
+                entry.getValue().count,
+                totalCount == 0 ? 0.0 : entry.getValue().count * 100.0 / totalCount
+            ));
+        }
+        if (otherCount > 0) {
+            stringBuilder.append(String.format(Locale.ROOT, "%-24s %-22s %15d %8.4f%%%n",
+                "(other outcomes)",
+                otherOutcomes,
+                otherCount,
+                otherCount * 100.0 / totalCount
+            ));
+        }
+        return stringBuilder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "OutcomeHistogram{" + getCounts() + (otherCount > 0 ? ", other=" + otherCount : "") + '}';
+    }
+
+    private List<Map.Entry<R, Counter>> sortedByCount() {
+        final List<Map.Entry<R, Counter>> entries=new ArrayList<>(counters.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<R, Counter> entry) -> entry.getValue().count).reversed());
+        return entries;
+    }
+
+    private static final class Counter {
+        private final Expect expect;
+        private long count=0;
+
+        private Counter(Expect expect) {
+            this.expect=expect;
+        }
+
+        private Counter copy() {
+            final Counter copy=new Counter(expect);
+            copy.count=count;
+            return copy;
+        }
+    }
+}
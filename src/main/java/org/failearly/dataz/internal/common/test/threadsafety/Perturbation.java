@@ -0,0 +1,206 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Perturbation is a timing perturbation strategy (see {@link ThreadSafetyVerifier#perturb(Perturbation)}). It widens
+ * the race windows by randomly delaying the workers, like the jitter of a production system does.
+ * <br><br>
+ * By default a perturbation is applied between two operations of a worker, counted across all shared instances of the
+ * iteration (see {@link ThreadSafetyVerifier#stride(int)}). If a worker executes only one operation per iteration (the
+ * default), it's applied before this operation instead. With {@link #atStart()} it's applied only once per iteration:
+ * after the worker has been released by the start barrier and before it's first operation.
+ * <br><br>
+ * The random decisions use the worker's random generator, but are made after the block choices, so the block choices
+ * of an iteration are still reproducible by it's seed.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Perturbation {
+    private static final Perturbation NONE=new Perturbation(Kind.NONE, 0.0, 0L, false, null);
+
+    private enum Kind {
+        NONE, YIELD, SPIN, PARK, CUSTOM
+    }
+
+    private final Kind kind;
+    private final double probability;
+    private final long maxDelay;
+    private final boolean atStart;
+    private final Runnable action;
+
+    private Perturbation(Kind kind, double probability, long maxDelay, boolean atStart, Runnable action) {
+        this.kind=kind;
+        this.probability=probability;
+        this.maxDelay=maxDelay;
+        this.atStart=atStart;
+        this.action=action;
+    }
+
+    /**
+     * @return no perturbation at all (the default).
+     */
+    public static Perturbation none() {
+        return NONE;
+    }
+
+    /**
+     * {@link Thread#yield()} with the given probability.
+     *
+     * @param probability the probability ({@code 0 < probability <= 1}).
+     *
+     * @return the perturbation.
+     */
+    public static Perturbation yield(double probability) {
+        return new Perturbation(Kind.YIELD, checkProbability(probability), 0L, false, null);
+    }
+
+    /**
+     * Busy spin ({@link Thread#onSpinWait()}) a random number of times (at most {@code maxSpins}) with the given
+     * probability.
+     *
+     * @param probability the probability ({@code 0 < probability <= 1}).
+     * @param maxSpins    the maximum number of spins.
+     *
+     * @return the perturbation.
+     */
+    public static Perturbation spin(double probability, int maxSpins) {
+        if (maxSpins < 1) {
+            throw new IllegalArgumentException("maxSpins >= 1");
+        }
+        return new Perturbation(Kind.SPIN, checkProbability(probability), maxSpins, false, null);
+    }
+
+    /**
+     * Park for a random time (at most {@code maxPark}) with the given probability.
+     *
+     * @param probability the probability ({@code 0 < probability <= 1}).
+     * @param maxPark     the maximum park time.
+     *
+     * @return the perturbation.
+     */
+    public static Perturbation park(double probability, Duration maxPark) {
+        if (maxPark == null || maxPark.isZero() || maxPark.isNegative()) {
+            throw new IllegalArgumentException("maxPark > 0");
+        }
+        return new Perturbation(Kind.PARK, checkProbability(probability), maxPark.toNanos(), false, null);
+    }
+
+    /**
+     * Runs the {@code action} with the given probability (internal, i.e. for tests).
+     *
+     * @param probability the probability ({@code 0 < probability <= 1}).
+     * @param action      the action.
+     *
+     * @return the perturbation.
+     */
+    static Perturbation custom(double probability, Runnable action) {
+        return new Perturbation(Kind.CUSTOM, checkProbability(probability), 0L, false, Objects.requireNonNull(action));
+    }
+
+    private static double checkProbability(double probability) {
+        if (!(probability > 0.0 && probability <= 1.0)) {
+            throw new IllegalArgumentException("0 < probability <= 1");
+        }
+        return probability;
+    }
+
+    /**
+     * @return a copy of this perturbation, which is applied only before the first operation of each worker.
+     */
+    public Perturbation atStart() {
+        return kind == Kind.NONE ? this : new Perturbation(kind, probability, maxDelay, true, action);
+    }
+
+    boolean isNone() {
+        return kind == Kind.NONE;
+    }
+
+    boolean isAtStart() {
+        return atStart;
+    }
+
+    /**
+     * Applies the perturbation (with it's probability).
+     *
+     * @param random the worker's random generator.
+     */
+    void apply(SplittableRandom random) {
+        if (kind == Kind.NONE || random.nextDouble() >= probability) {
+            return;
+        }
+        switch (kind) {
+            case YIELD:
+                Thread.yield();
+                break;
+            case SPIN:
+                busySpin(1 + random.nextInt((int) maxDelay));
+                break;
+            case PARK:
+                LockSupport.parkNanos(1L + random.nextLong(maxDelay));
+                break;
+            case CUSTOM:
+                action.run();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void busySpin(int spins) {
+        for (int i=0; i < spins; i++) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Perturbation)) {
+            return false;
+        }
+        final Perturbation that=(Perturbation) other;
+        return kind == that.kind
+            && Double.compare(probability, that.probability) == 0
+            && maxDelay == that.maxDelay
+            && atStart == that.atStart
+            && Objects.equals(action, that.action);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, probability, maxDelay, atStart, action);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case YIELD:
+                return "yield(" + probability + ")" + (atStart ? ".atStart()" : "");
+            case SPIN:
+                return "spin(" + probability + ", " + maxDelay + ")" + (atStart ? ".atStart()" : "");
+            case PARK:
+                return "park(" + probability + ", " + Duration.ofNanos(maxDelay) + ")" + (atStart ? ".atStart()" : "");
+            case CUSTOM:
+                return "custom(" + probability + ", " + action + ")" + (atStart ? ".atStart()" : "");
+            default:
+                return "none()";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * PerturbationComparison is the result of {@link ThreadSafetyVerifier#comparePerturbations(Perturbation...)}. It
+ * contains the detection rate (failed iterations per second) of each perturbation strategy, so the strategy, which
+ * detects a race most efficiently, could be chosen.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PerturbationComparison {
+    private final List<VerificationReport> reports;
+
+    private PerturbationComparison(List<VerificationReport> reports) {
+        this.reports=Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * @return the reports of all strategies (in order of execution).
+     */
+    public List<VerificationReport> getReports() {
+        return reports;
+    }
+
+    /**
+     * @param perturbation the perturbation strategy
+     *
+     * @return the report of the given strategy.
+     */
+    public Optional<VerificationReport> getReport(Perturbation perturbation) {
+        return reports.stream().filter(report -> report.getPerturbation().equals(perturbation)).findFirst();
+    }
+
+    /**
+     * @return the comparison as (human readable) text table.
+     */
+    public String toTable() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(String.format(Locale.ROOT, "%-36s %10s %8s %9s %12s %15s%n",
+            "perturbation", "iterations", "failed", "failure%", "detections/s", "ops/s"));
+        for (VerificationReport report : reports) {
+            stringBuilder.append(String.format(Locale.ROOT, "%-36s %10d %8d %8.2f%% %12.2f %15.0f%n",
+                report.getPerturbation(),
+                report.getIterations(),
+                report.getFailedIterations(),
+                report.getFailureRate() * 100.0,
+                report.getDetectionsPerSecond(),
+                report.getAverageOperationsPerSecond()
+            ));
+        }
+        return stringBuilder.toString();
+    }
+
+    Optional<AssertionError> getFirstFailure() {
+        return reports.stream()
+            .map(VerificationReport::getFirstFailure)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .findFirst();
+    }
+
+    @Override
+    public String toString() {
+        return toTable();
+    }
+
+    /**
+     * Builder is used by {@link ThreadSafetyVerifier} while comparing the strategies.
+     */
+    static final class Builder {
+        private final List<VerificationReport> reports=new ArrayList<>();
+
+        Builder add(VerificationReport report) {
+            reports.add(report);
+            return this;
+        }
+
+        PerturbationComparison build() {
+            return new PerturbationComparison(new ArrayList<>(reports));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * PinnedThreadsRecorder is a (internal) class for {@link ThreadSafetyVerifier}. It records the pinning events of
+ * virtual threads ({@code jdk.VirtualThreadPinned}) by using a Java Flight Recorder recording.
+ * <br><br>
+ * A virtual thread is pinned to it's carrier thread, if it blocks while holding a monitor (i.e. within a
+ * {@code synchronized} block). The pinning events are grouped by the first frame outside of the JDK, which is
+ * usually the code of the subject holding the monitor.
+ */
+final class PinnedThreadsRecorder {
+    private static final String PINNED_EVENT="jdk.VirtualThreadPinned";
+    private static final String UNKNOWN_LOCATION="<unknown>";
+
+    private final Recording recording;
+
+    private PinnedThreadsRecorder(Recording recording) {
+        this.recording=recording;
+    }
+
+    /**
+     * Starts a new recording of pinning events.
+     *
+     * @return the recorder or {@code null} if Java Flight Recorder is not available.
+     */
+    static PinnedThreadsRecorder start() {
+        try {
+            final Recording recording=new Recording();
+            recording.setName("ThreadSafetyVerifier-Pinning");
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            return new PinnedThreadsRecorder(recording);
+        } catch (RuntimeException | Error ex) {
+            LOGGER.warn("Could not start recording of pinned virtual threads.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stops the recording and reports the pinning events.
+     *
+     * @return number of pinning events.
+     */
+    int stopAndReport() {
+        try {
+            recording.stop();
+            final List<RecordedEvent> events=readPinnedEvents();
+            if (!events.isEmpty()) {
+                LOGGER.warn(report(events));
+            } else {
+                LOGGER.info("No pinned virtual threads detected.");
+            }
+            return events.size();
+        } catch (IOException | RuntimeException | Error ex) {
+            LOGGER.warn("Could not read recording of pinned virtual threads.", ex);
+            return 0;
+        } finally {
+            close();
+        }
+    }
+
+    private void close() {
+        try {
+            recording.close();
+        } catch (RuntimeException | Error ex) {
+            LOGGER.warn("Could not close recording of pinned virtual threads.", ex);
+        }
+    }
+
+    private List<RecordedEvent> readPinnedEvents() throws IOException {
+        final Path recordingFile=Files.createTempFile("tsv-pinning", ".jfr");
+        try {
+            recording.dump(recordingFile);
+            return RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(ev -> PINNED_EVENT.equals(ev.getEventType().getName()))
+                .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+    }
+
+    private static String report(List<RecordedEvent> events) {
+        final Map<String, List<RecordedEvent>> byLocation=events.stream()
+            .collect(Collectors.groupingBy(PinnedThreadsRecorder::location, TreeMap::new, Collectors.toList()));
+
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append("Detected ")
+            .append(events.size())
+            .append(" pinning event(s) of virtual threads (blocking while holding a monitor):");
+        byLocation.forEach((location, locationEvents) -> stringBuilder
+            .append("\n\t")
+            .append(locationEvents.size())
+            .append("x, total ")
+            .append(locationEvents.stream().map(RecordedEvent::getDuration).reduce(Duration.ZERO, Duration::plus).toMillis())
+            .append("ms at ")
+            .append(location)
+        );
+        return stringBuilder.toString();
+    }
+
+    private static String location(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return UNKNOWN_LOCATION;
+        }
+        return event.getStackTrace().getFrames().stream()
+            .filter(RecordedFrame::isJavaFrame)
+            .filter(frame -> !isJdkFrame(frame))
+            .findFirst()
+            .map(PinnedThreadsRecorder::toString)
+            .orElse(UNKNOWN_LOCATION);
+    }
+
+    private static boolean isJdkFrame(RecordedFrame frame) {
+        final String className=frame.getMethod().getType().getName();
+        return className.startsWith("java.") || className.startsWith("jdk.") || className.startsWith("sun.");
+    }
+
+    private static String toString(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.BlockResult.caughtUnexpectedException;
+import static org.junit.Assert.fail;
+
+/**
+ * PrimitiveExecutionBlockVerifier is the (internal) base class of {@link IntExecutionBlockVerifier} and
+ * {@link LongExecutionBlockVerifier}. The results are stored as primitive {@code long}s (no boxing) and the
+ * uniqueness check uses a {@link LongHashSet}.
+ */
+@SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "WeakerAccess", "unchecked"})
+abstract class PrimitiveExecutionBlockVerifier<T, X extends PrimitiveExecutionBlockVerifier<T, X>>
+    extends ThreadSafetyVerifier<T, Long, X> {
+    private final List<LongExecutionBlockVerifier.LongExecutionBlock<T>> executionBlocks=new ArrayList<>();
+    private Optional<LongPredicate> verifier=Optional.empty();
+    private boolean assertUnique=false;
+
+    PrimitiveExecutionBlockVerifier(Supplier<T> supplier) {
+        super(supplier);
+    }
+
+    final X addExecutionBlock(LongExecutionBlockVerifier.LongExecutionBlock<T> executionBlock) {
+        if (executionBlock == null) {
+            throw new IllegalArgumentException("Execution block must not be null.");
+        }
+        this.executionBlocks.add(executionBlock);
+        return (X) this;
+    }
+
+    final X addVerifier(LongPredicate predicate) {
+        if (!this.verifier.isPresent()) {
+            this.verifier=Optional.of(predicate);
+        } else {
+            this.verifier=Optional.of(this.verifier.get().or(predicate));
+        }
+        return (X) this;
+    }
+
+    /**
+     * All results of an iteration must be unique (i.e. generated IDs or sequence numbers). The check uses a compact
+     * primitive set, so even millions of results per iteration do not need much memory: The results need {@code 8}
+     * bytes per operation (see {@link ResultSlots}) and the set grows by the distinct results up to {@code 11-21}
+     * bytes per distinct result ({@code 10M} operations with distinct results need {@code 80MB + 128MB}).
+     *
+     * @return this
+     */
+    public final X thenAssertUnique() {
+        this.assertUnique=true;
+        return (X) this;
+    }
+
+    /**
+     * @return {@code true} if the derived verifier asserts the result array.
+     */
+    abstract boolean hasResultsAssertion();
+
+    /**
+     * Assert the result array (if any).
+     */
+    abstract void doAssertResults(ResultSlots<Long> results);
+
+    /**
+     * @return all results of the current iteration.
+     */
+    static long[] toLongArray(ResultSlots<Long> results) {
+        final long[] values=new long[(int) results.numberOfExecutedOperations()];
+        int idx=0;
+        for (int slot=0; slot < results.size(); slot++) {
+            if (results.hasValue(slot)) {
+                values[idx++]=results.longValue(slot);
+            }
+        }
+        return idx == values.length ? values : Arrays.copyOf(values, idx);
+    }
+
+    @Override
+    void checkMandatoryFields() {
+        super.checkMandatoryFields();
+        if (executionBlocks.isEmpty()) {
+            throw new IllegalArgumentException("Missing execution block! Please use when() with an appropriate " +
+                "execution block.");
+        }
+        if (!(verifier.isPresent() || assertUnique || hasResultsAssertion() || hasArbiter())) {
+            throw new IllegalArgumentException("Missing verifier, assertUnique, assertResults or arbiter!");
+        }
+    }
+
+    @Override
+    final int numberOfBlocks() {
+        return executionBlocks.size();
+    }
+
+    @Override
+    final ResultSlots<Long> newResultSlots(
+        int numThreads,
+        int operationsPerThread,
+        Optional<OutcomeHistogram<Long>> outcomes
+    ) {
+        return ResultSlots.withLongValues(numThreads, operationsPerThread);
+    }
+
+    @Override
+    final boolean doExecuteBlock(int blockIdx, T sharedInstance, ResultSlots<Long> results, int slot) {
+        try {
+            results.recordLongValue(slot, executionBlocks.get(blockIdx).apply(sharedInstance));
+            return true;
+        } catch (Throwable ex) {
+            results.recordFailure(slot, caughtUnexpectedException(ex));
+            return false;
+        }
+    }
+
+    @Override
+    final void doVerifyResults(ResultSlots<Long> results) {
+        if (this.verifier.isPresent()) {
+            final LongPredicate predicate=this.verifier.get();
+            for (int slot=0; slot < results.size(); slot++) {
+                if (results.hasValue(slot) && !predicate.test(results.longValue(slot))) {
+                    fail("At least one verifier failed");
+                }
+            }
+        }
+        if (this.assertUnique) {
+            final LongHashSet uniqueValues=results.longSet();
+            for (int slot=0; slot < results.size(); slot++) {
+                if (results.hasValue(slot) && !uniqueValues.add(results.longValue(slot))) {
+                    fail("Result " + results.longValue(slot) + " is not unique");
+                }
+            }
+        }
+        doAssertResults(results);
+    }
+}
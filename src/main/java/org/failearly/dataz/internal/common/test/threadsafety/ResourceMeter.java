@@ -0,0 +1,163 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * ResourceMeter is a (internal) class for {@link ThreadSafetyVerifier}. It measures the allocated bytes
+ * ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}) and the CPU time
+ * ({@link ThreadMXBean#getCurrentThreadCpuTime()}) of each executed block of one worker thread and records them into
+ * it's {@link ResourceUsage}.
+ * <br><br>
+ * Reading the allocated bytes may allocate itself (depending on the JVM). This overhead is calibrated on creation and
+ * subtracted from each measurement. Must be created and used by the worker thread itself.
+ * <br><br>
+ * The JVM wide flags for measuring the allocated memory and the CPU time are enabled by the first meter and restored
+ * to their previous values, after the last meter has been closed.
+ */
+final class ResourceMeter implements AutoCloseable {
+    private static final int CALIBRATION_ROUNDS=32;
+    private static final AtomicInteger activeMeters=new AtomicInteger(0);
+    private static volatile boolean allocatedMemoryEnabledBefore;
+    private static volatile boolean cpuTimeEnabledBefore;
+
+    private final ThreadMXBean threadMXBean;
+    private final com.sun.management.ThreadMXBean allocationMXBean;
+    private final long threadId;
+    private final ResourceUsage resourceUsage;
+    private final long allocationOverhead;
+    private long startBytes;
+    private long startCpuNanos;
+    private boolean closed=false;
+
+    /**
+     * @param numThreads     the number of threads (of the verification)
+     * @param numberOfBlocks the number of blocks
+     */
+    ResourceMeter(int numThreads, int numberOfBlocks) {
+        this.threadMXBean=ManagementFactory.getThreadMXBean();
+        this.allocationMXBean=allocationMXBean(threadMXBean);
+        enableMeasuring(threadMXBean, allocationMXBean);
+        this.threadId=Thread.currentThread().getId();
+        this.resourceUsage=new ResourceUsage(
+            numThreads,
+            numberOfBlocks,
+            allocationMXBean != null,
+            isCpuTimeSupported(threadMXBean)
+        );
+        this.allocationOverhead=calibrateAllocationOverhead();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocationMXBean=(com.sun.management.ThreadMXBean) threadMXBean;
+            if (allocationMXBean.isThreadAllocatedMemorySupported()) {
+                return allocationMXBean;
+            }
+        }
+        LOGGER.warn("Measuring allocated bytes per thread is not supported.");
+        return null;
+    }
+
+    private static boolean isCpuTimeSupported(ThreadMXBean threadMXBean) {
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            LOGGER.warn("Measuring CPU time per thread is not supported.");
+            return false;
+        }
+        return true;
+    }
+
+    private static void enableMeasuring(ThreadMXBean threadMXBean, com.sun.management.ThreadMXBean allocationMXBean) {
+        synchronized (activeMeters) {
+            if (activeMeters.getAndIncrement() == 0) {
+                if (allocationMXBean != null) {
+                    allocatedMemoryEnabledBefore=allocationMXBean.isThreadAllocatedMemoryEnabled();
+                    allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+                }
+                if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+                    cpuTimeEnabledBefore=threadMXBean.isThreadCpuTimeEnabled();
+                    threadMXBean.setThreadCpuTimeEnabled(true);
+                }
+            }
+        }
+    }
+
+    private long calibrateAllocationOverhead() {
+        if (allocationMXBean == null) {
+            return 0L;
+        }
+        long overhead=Long.MAX_VALUE;
+        for (int i=0; i < CALIBRATION_ROUNDS; i++) {
+            final long before=allocatedBytes();
+            overhead=Math.min(overhead, allocatedBytes() - before);
+        }
+        return overhead;
+    }
+
+    private long allocatedBytes() {
+        return allocationMXBean != null ? allocationMXBean.getThreadAllocatedBytes(threadId) : 0L;
+    }
+
+    private long cpuNanos() {
+        return resourceUsage.isCpuTimeMeasured() ? threadMXBean.getCurrentThreadCpuTime() : 0L;
+    }
+
+    /**
+     * Starts measuring the next block.
+     */
+    void start() {
+        startCpuNanos=cpuNanos();
+        startBytes=allocatedBytes();
+    }
+
+    /**
+     * Stops measuring the block and records it.
+     *
+     * @param blockIdx the block index
+     */
+    void stop(int blockIdx) {
+        final long bytes=allocatedBytes() - startBytes - allocationOverhead;
+        final long cpu=cpuNanos() - startCpuNanos;
+        resourceUsage.record(blockIdx, bytes, cpu);
+    }
+
+    ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * Restores the JVM wide flags, if this is the last active meter (could be called by any thread).
+     */
+    @Override
+    public void close() {
+        synchronized (activeMeters) {
+            if (closed) {
+                return;
+            }
+            closed=true;
+            if (activeMeters.decrementAndGet() == 0) {
+                if (allocationMXBean != null && !allocatedMemoryEnabledBefore) {
+                    allocationMXBean.setThreadAllocatedMemoryEnabled(false);
+                }
+                if (threadMXBean.isCurrentThreadCpuTimeSupported() && !cpuTimeEnabledBefore) {
+                    threadMXBean.setThreadCpuTimeEnabled(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.Locale;
+
+/**
+ * ResourceUsage contains the allocated bytes and the CPU time of the executed blocks (operations) per block (see
+ * {@link ThreadSafetyVerifier#measureResources()}).
+ * <br><br>
+ * Recording does not allocate anything and is not thread safe: {@link ThreadSafetyVerifier} uses one instance per
+ * thread and merges them afterwards. The allocated bytes or the CPU time are only available, if the JVM supports
+ * measuring them (see {@link #isAllocationMeasured()} and {@link #isCpuTimeMeasured()}).
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ResourceUsage {
+    private final int numThreads;
+    private final long[] operations;
+    private final long[] allocatedBytes;
+    private final long[] cpuNanos;
+    private boolean allocationMeasured;
+    private boolean cpuTimeMeasured;
+
+    ResourceUsage(int numThreads, int numberOfBlocks, boolean allocationMeasured, boolean cpuTimeMeasured) {
+        this.numThreads=numThreads;
+        this.operations=new long[numberOfBlocks];
+        this.allocatedBytes=new long[numberOfBlocks];
+        this.cpuNanos=new long[numberOfBlocks];
+        this.allocationMeasured=allocationMeasured;
+        this.cpuTimeMeasured=cpuTimeMeasured;
+    }
+
+    /**
+     * Records an executed block.
+     *
+     * @param blockIdx       the block index
+     * @param allocatedBytes the allocated bytes (negative values are recorded as {@code 0}).
+     * @param cpuNanos       the CPU time in nanoseconds (negative values are recorded as {@code 0}).
+     */
+    void record(int blockIdx, long allocatedBytes, long cpuNanos) {
+        this.operations[blockIdx]++;
+        this.allocatedBytes[blockIdx]+=Math.max(0L, allocatedBytes);
+        this.cpuNanos[blockIdx]+=Math.max(0L, cpuNanos);
+    }
+
+    /**
+     * Adds all recorded blocks of {@code other}.
+     *
+     * @param other the resource usage of another thread
+     *
+     * @return this
+     */
+    ResourceUsage merge(ResourceUsage other) {
+        for (int blockIdx=0; blockIdx < operations.length; blockIdx++) {
+            this.operations[blockIdx]+=other.operations[blockIdx];
+            this.allocatedBytes[blockIdx]+=other.allocatedBytes[blockIdx];
+            this.cpuNanos[blockIdx]+=other.cpuNanos[blockIdx];
+        }
+        this.allocationMeasured&=other.allocationMeasured;
+        this.cpuTimeMeasured&=other.cpuTimeMeasured;
+        return this;
+    }
+
+    ResourceUsage copy() {
+        return new ResourceUsage(numThreads, operations.length, allocationMeasured, cpuTimeMeasured).merge(this);
+    }
+
+    /**
+     * @return the number of threads.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @return {@code true} if the allocated bytes have been measured.
+     */
+    public boolean isAllocationMeasured() {
+        return allocationMeasured;
+    }
+
+    /**
+     * @return {@code true} if the CPU time has been measured.
+     */
+    public boolean isCpuTimeMeasured() {
+        return cpuTimeMeasured;
+    }
+
+    /**
+     * @return the number of blocks.
+     */
+    public int getNumberOfBlocks() {
+        return operations.length;
+    }
+
+    /**
+     * @return the number of recorded operations (all blocks).
+     */
+    public long getOperations() {
+        return sum(operations);
+    }
+
+    /**
+     * @param blockIdx the block index (in order of declaration).
+     *
+     * @return the number of recorded operations of the block.
+     */
+    public long getOperations(int blockIdx) {
+        return operations[blockIdx];
+    }
+
+    /**
+     * @return the average allocated bytes per operation (all blocks).
+     */
+    public double getAllocatedBytesPerOperation() {
+        return perOperation(sum(allocatedBytes), getOperations());
+    }
+
+    /**
+     * @param blockIdx the block index (in order of declaration).
+     *
+     * @return the average allocated bytes per operation of the block.
+     */
+    public double getAllocatedBytesPerOperation(int blockIdx) {
+        return perOperation(allocatedBytes[blockIdx], operations[blockIdx]);
+    }
+
+    /**
+     * @return the average CPU time per operation in nanoseconds (all blocks).
+     */
+    public double getCpuNanosPerOperation() {
+        return perOperation(sum(cpuNanos), getOperations());
+    }
+
+    /**
+     * @param blockIdx the block index (in order of declaration).
+     *
+     * @return the average CPU time per operation of the block in nanoseconds.
+     */
+    public double getCpuNanosPerOperation(int blockIdx) {
+        return perOperation(cpuNanos[blockIdx], operations[blockIdx]);
+    }
+
+    private static long sum(long[] values) {
+        long sum=0;
+        for (long value : values) {
+            sum+=value;
+        }
+        return sum;
+    }
+
+    private static double perOperation(long value, long operations) {
+        return operations == 0 ? 0.0 : (double) value / operations;
+    }
+
+    /**
+     * @return the resource usage per block as (human readable) text table.
+     */
+    public String toTable() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(String.format(Locale.ROOT, "%8s %15s %15s %15s   (%d thread(s))%n",
+            "block", "operations", "bytes/op", "cpu(ns)/op", numThreads));
+        for (int blockIdx=0; blockIdx < operations.length; blockIdx++) {
+            appendRow(stringBuilder, String.valueOf(blockIdx), operations[blockIdx],
+                getAllocatedBytesPerOperation(blockIdx), getCpuNanosPerOperation(blockIdx));
+        }
+        appendRow(stringBuilder, "total", getOperations(), getAllocatedBytesPerOperation(), getCpuNanosPerOperation());
+        return stringBuilder.toString();
+    }
+
+    private void appendRow(StringBuilder stringBuilder, String block, long ops, double bytesPerOp, double cpuPerOp) {
+        stringBuilder.append(String.format(Locale.ROOT, "%8s %15d %15s %15s%n",
+            block,
+            ops,
+            allocationMeasured ? String.format(Locale.ROOT, "%.1f", bytesPerOp) : "-",
+            cpuTimeMeasured ? String.format(Locale.ROOT, "%.1f", cpuPerOp) : "-"
+        ));
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceUsage{" +
+            "numThreads=" + numThreads +
+            ", operations=" + getOperations() +
+            (allocationMeasured ? ", bytesPerOperation=" + getAllocatedBytesPerOperation() : "") +
+            (cpuTimeMeasured ? ", cpuNanosPerOperation=" + getCpuNanosPerOperation() : "") +
+            '}';
+    }
+}
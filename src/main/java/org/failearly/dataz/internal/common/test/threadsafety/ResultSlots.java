@@ -0,0 +1,258 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * ResultSlots is a (internal) class for {@link ThreadSafetyVerifier}. It holds the results of all operations of one
+ * iteration in preallocated slots ({@code worker * operationsPerThread + operation}).
+ * <br><br>
+ * A successful operation only stores it's value (no allocation). A {@link BlockResult} will only be created for a
+ * failed operation. Each worker writes only into it's own slots and the coordinator reads the slots after the done
+ * barrier, so no further synchronization is necessary.
+ * <br><br>
+ * Depending on the verifier the values are stored as objects, as primitive {@code long}s or not at all (see the
+ * factory methods). The value list, value set and long set (see {@link #values()}, {@link #valueSet()} and
+ * {@link #longSet()}) are reused across the iterations, so they are only valid until the next iteration.
+ *
+ * @param <R> any result type (incl. Void)
+ */
+final class ResultSlots<R> {
+    private static final Object[] NO_VALUES=new Object[0];
+    private static final long[] NO_LONG_VALUES=new long[0];
+
+    private final int operationsPerThread;
+    private final Object[] values;
+    private final long[] longValues;
+    private final BlockResult<R>[] failures;
+    private final int[] failuresPerWorker;
+    private final int[] executedPerWorker;
+    private final OutcomeHistogram<R> outcomes;
+    private List<R> valueList;
+    private Set<R> valueSet;
+    private LongHashSet longSet;
+
+    private ResultSlots(
+        int numThreads,
+        int operationsPerThread,
+        Object[] values,
+        long[] longValues,
+        OutcomeHistogram<R> outcomes
+    ) {
+        this.operationsPerThread=operationsPerThread;
+        this.values=values;
+        this.longValues=longValues;
+        this.outcomes=outcomes;
+        this.failures=newBlockResults(numThreads * operationsPerThread);
+        this.failuresPerWorker=new int[numThreads];
+        this.executedPerWorker=new int[numThreads];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> BlockResult<R>[] newBlockResults(int length) {
+        return (BlockResult<R>[]) new BlockResult<?>[length];
+    }
+
+    /**
+     * Slots without values (only failures).
+     */
+    static <R> ResultSlots<R> withoutValues(int numThreads, int operationsPerThread) {
+        return new ResultSlots<>(numThreads, operationsPerThread, NO_VALUES, NO_LONG_VALUES, null);
+    }
+
+    /**
+     * Slots with object values, which are counted by the outcome histogram (if not {@code null}).
+     */
+    static <R> ResultSlots<R> withValues(int numThreads, int operationsPerThread, OutcomeHistogram<R> outcomes) {
+        final Object[] values=new Object[numThreads * operationsPerThread];
+        return new ResultSlots<>(numThreads, operationsPerThread, values, NO_LONG_VALUES, outcomes);
+    }
+
+    /**
+     * Slots with primitive {@code long} values.
+     */
+    static <R> ResultSlots<R> withLongValues(int numThreads, int operationsPerThread) {
+        final long[] longValues=new long[numThreads * operationsPerThread];
+        return new ResultSlots<>(numThreads, operationsPerThread, NO_VALUES, longValues, null);
+    }
+
+    /**
+     * @return number of slots ({@code numThreads * operationsPerThread}).
+     */
+    int size() {
+        return failures.length;
+    }
+
+    /**
+     * Records the value of a successful operation.
+     */
+    void recordValue(int slot, R value) {
+        values[slot]=value;
+    }
+
+    /**
+     * Records the (primitive) value of a successful operation.
+     */
+    void recordLongValue(int slot, long value) {
+        longValues[slot]=value;
+    }
+
+    /**
+     * Records a failed operation.
+     */
+    void recordFailure(int slot, BlockResult<R> failure) {
+        if (values.length > 0) {
+            values[slot]=null;
+        }
+        failures[slot]=failure;
+        failuresPerWorker[slot / operationsPerThread]++;
+    }
+
+    /**
+     * Records the number of executed operations of the worker. The remaining slots of the worker has been skipped
+     * (fail fast).
+     */
+    void recordExecuted(int worker, int executed) {
+        executedPerWorker[worker]=executed;
+    }
+
+    /**
+     * @return {@code true} if the slot contains a value of the current iteration.
+     */
+    boolean hasValue(int slot) {
+        return slot % operationsPerThread < executedPerWorker[slot / operationsPerThread] && failures[slot] == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    R value(int slot) {
+        return (R) values[slot];
+    }
+
+    /**
+     * @return the value of the slot, primitive values are boxed ({@code null} for slots without values).
+     */
+    @SuppressWarnings("unchecked")
+    R boxedValue(int slot) {
+        if (longValues.length > 0) {
+            return (R) Long.valueOf(longValues[slot]);
+        }
+        return values.length > 0 ? value(slot) : null;
+    }
+
+    long longValue(int slot) {
+        return longValues[slot];
+    }
+
+    /**
+     * @return number of executed operations within the current iteration.
+     */
+    long numberOfExecutedOperations() {
+        long executed=0;
+        for (int executedOfWorker : executedPerWorker) {
+            executed+=executedOfWorker;
+        }
+        return executed;
+    }
+
+    /**
+     * @return number of failed operations within the current iteration.
+     */
+    int numberOfFailures() {
+        int numberOfFailures=0;
+        for (int failuresOfWorker : failuresPerWorker) {
+            numberOfFailures+=failuresOfWorker;
+        }
+        return numberOfFailures;
+    }
+
+    /**
+     * Appends all failures of the current iteration.
+     */
+    StringBuilder appendFailuresTo(StringBuilder stringBuilder) {
+        for (BlockResult<R> failure : failures) {
+            if (failure != null) {
+                failure.appendTo(stringBuilder);
+            }
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * @return all (non {@code null}) values of the current iteration. The list will be reused.
+     */
+    List<R> values() {
+        if (valueList == null) {
+            valueList=new ArrayList<>(values.length);
+        }
+        valueList.clear();
+        for (int slot=0; slot < values.length; slot++) {
+            final R value=value(slot);
+            if (value != null && hasValue(slot)) {
+                valueList.add(value);
+            }
+        }
+        return valueList;
+    }
+
+    /**
+     * @return all distinct (non {@code null}) values of the current iteration. The set will be reused.
+     */
+    Set<R> valueSet() {
+        if (valueSet == null) {
+            valueSet=new HashSet<>();
+        }
+        valueSet.clear();
+        for (int slot=0; slot < values.length; slot++) {
+            final R value=value(slot);
+            if (value != null && hasValue(slot)) {
+                valueSet.add(value);
+            }
+        }
+        return valueSet;
+    }
+
+    /**
+     * @return an empty set for primitive {@code long} values with a capacity for all slots. The set will be reused.
+     */
+    LongHashSet longSet() {
+        if (longSet == null) {
+            longSet=new LongHashSet(longValues.length);
+        }
+        longSet.clear();
+        return longSet;
+    }
+
+    /**
+     * @return the outcome histogram across all iterations (if outcomes are counted).
+     */
+    Optional<OutcomeHistogram<R>> outcomes() {
+        return Optional.ofNullable(outcomes);
+    }
+
+    /**
+     * Removes the failures of the previous iteration. Must be called by the coordinator before the next iteration
+     * starts.
+     */
+    void clearFailures() {
+        if (numberOfFailures() > 0) {
+            Arrays.fill(failures, null);
+            Arrays.fill(failuresPerWorker, 0);
+        }
+    }
+}
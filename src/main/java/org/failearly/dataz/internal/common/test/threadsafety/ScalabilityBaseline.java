@@ -0,0 +1,132 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * ScalabilityBaseline is a (internal) class for {@link ThreadSafetyVerifier}. It persists the throughput and the p99
+ * latency of each level of a {@link ScalingCurve} as properties file and compares later curves with it.
+ * <br><br>
+ * A level regresses, if it's throughput is below {@code baseline * (1 - tolerance)} or it's p99 latency is above
+ * {@code baseline * (1 + tolerance)}. Levels missing in the baseline will not be compared.
+ */
+final class ScalabilityBaseline {
+    /**
+     * If this system property is {@code true}, existing baselines will be overwritten by the current results.
+     */
+    static final String UPDATE_BASELINES_PROPERTY="threadsafety.baselines.update";
+
+    private static final String OPERATIONS_PER_SECOND_KEY="threads.%d.operationsPerSecond";
+    private static final String P99_LATENCY_KEY="threads.%d.p99LatencyNanos";
+
+    private final Path baselineFile;
+    private final double tolerance;
+
+    ScalabilityBaseline(Path baselineFile, double tolerance) {
+        this.baselineFile=baselineFile;
+        this.tolerance=tolerance;
+    }
+
+    /**
+     * Compares the scaling curve with the baseline. If there is no baseline yet (or the baselines should be updated),
+     * the scaling curve will be stored as new baseline.
+     *
+     * @param scalingCurve the current scaling curve.
+     *
+     * @return the regressions.
+     */
+    List<String> compare(ScalingCurve scalingCurve) {
+        if (!Files.exists(baselineFile) || Boolean.getBoolean(UPDATE_BASELINES_PROPERTY)) {
+            store(scalingCurve);
+            return new ArrayList<>();
+        }
+
+        final Properties baseline=load();
+        final List<String> regressions=new ArrayList<>();
+        for (ScalingCurve.Level level : scalingCurve.getLevels()) {
+            final int numThreads=level.getNumThreads();
+            get(baseline, OPERATIONS_PER_SECOND_KEY, numThreads).ifPresent(expected -> {
+                final double minimum=expected * (1.0 - tolerance);
+                if (level.getOperationsPerSecond() < minimum) {
+                    regressions.add(String.format(Locale.ROOT,
+                        "Throughput at %d thread(s) regressed: %.0f ops/s < %.0f ops/s (baseline %.0f ops/s, tolerance %.0f%%)",
+                        numThreads, level.getOperationsPerSecond(), minimum, expected, tolerance * 100.0));
+                }
+            });
+            get(baseline, P99_LATENCY_KEY, numThreads).ifPresent(expected -> level.getLatencyAtPercentile(99.0)
+                .ifPresent(actual -> {
+                    final double maximum=expected * (1.0 + tolerance);
+                    if (actual > maximum) {
+                        regressions.add(String.format(Locale.ROOT,
+                            "p99 latency at %d thread(s) regressed: %dns > %.0fns (baseline %.0fns, tolerance %.0f%%)",
+                            numThreads, actual, maximum, expected, tolerance * 100.0));
+                    }
+                }));
+        }
+        return regressions;
+    }
+
+    private static Optional<Double> get(Properties baseline, String keyFormat, int numThreads) {
+        return Optional.ofNullable(baseline.getProperty(String.format(Locale.ROOT, keyFormat, numThreads)))
+            .map(Double::valueOf);
+    }
+
+    private Properties load() {
+        final Properties properties=new Properties();
+        try (Reader reader=Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read baseline " + baselineFile, ex);
+        }
+        return properties;
+    }
+
+    private void store(ScalingCurve scalingCurve) {
+        final Properties properties=new Properties();
+        for (ScalingCurve.Level level : scalingCurve.getLevels()) {
+            final int numThreads=level.getNumThreads();
+            properties.setProperty(
+                String.format(Locale.ROOT, OPERATIONS_PER_SECOND_KEY, numThreads),
+                String.format(Locale.ROOT, "%.1f", level.getOperationsPerSecond())
+            );
+            level.getLatencyAtPercentile(99.0).ifPresent(latency -> properties.setProperty(
+                String.format(Locale.ROOT, P99_LATENCY_KEY, numThreads),
+                String.valueOf(latency)
+            ));
+        }
+
+        try {
+            Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+            try (Writer writer=Files.newBufferedWriter(baselineFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Scalability baseline of ThreadSafetyVerifier");
+            }
+            LOGGER.info("Scalability baseline written to {}", baselineFile.toAbsolutePath());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write baseline " + baselineFile, ex);
+        }
+    }
+}
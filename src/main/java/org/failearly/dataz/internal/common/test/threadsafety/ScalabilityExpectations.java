@@ -0,0 +1,111 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.Assert.fail;
+
+/**
+ * ScalabilityExpectations is a (internal) class for {@link ThreadSafetyVerifier}. It collects the expectations on
+ * the {@link ScalingCurve} (speedup, latency and baseline) and verifies them after all iterations.
+ */
+final class ScalabilityExpectations {
+    private final List<Function<ScalingCurve, List<String>>> expectations=new ArrayList<>();
+    private final List<Integer> speedupThreadCounts=new ArrayList<>();
+
+    ScalabilityExpectations() {
+    }
+
+    ScalabilityExpectations(ScalabilityExpectations other) {
+        this.expectations.addAll(other.expectations);
+        this.speedupThreadCounts.addAll(other.speedupThreadCounts);
+    }
+
+    boolean isEmpty() {
+        return expectations.isEmpty();
+    }
+
+    void expectSpeedup(int numThreads, double minSpeedup) {
+        speedupThreadCounts.add(numThreads);
+        expectations.add(curve -> {
+            final List<String> violations=new ArrayList<>();
+            final Optional<ScalingCurve.Level> level=curve.getLevel(numThreads);
+            if (!level.isPresent()) {
+                violations.add("No level with " + numThreads + " thread(s) for speedup expectation.");
+            } else if (level.get().getSpeedup() < minSpeedup) {
+                violations.add(String.format(Locale.ROOT,
+                    "Speedup at %d thread(s): expected >= %.2f, actual %.2f",
+                    numThreads, minSpeedup, level.get().getSpeedup()));
+            }
+            return violations;
+        });
+    }
+
+    void expectLatencyAtPercentile(double percentile, long maxNanos) {
+        expectations.add(curve -> {
+            final List<String> violations=new ArrayList<>();
+            for (ScalingCurve.Level level : curve.getLevels()) {
+                level.getLatencyAtPercentile(percentile)
+                    .filter(actual -> actual > maxNanos)
+                    .ifPresent(actual -> violations.add(String.format(Locale.ROOT,
+                        "Latency (p%s) at %d thread(s): expected <= %dns, actual %dns",
+                        percentile, level.getNumThreads(), maxNanos, actual)));
+            }
+            return violations;
+        });
+    }
+
+    void expectBaseline(ScalabilityBaseline baseline) {
+        expectations.add(baseline::compare);
+    }
+
+    /**
+     * Checks that each speedup expectation refers to one of the thread counts.
+     *
+     * @param threadCounts the thread counts of the sweep (or the single number of threads).
+     */
+    void checkThreadCounts(int[] threadCounts) {
+        for (int numThreads : speedupThreadCounts) {
+            boolean found=false;
+            for (int threadCount : threadCounts) {
+                found|=threadCount == numThreads;
+            }
+            if (!found) {
+                throw new IllegalArgumentException("Speedup expected at " + numThreads + " thread(s), " +
+                    "but no such level! Please use sweepThreads() with an appropriate number of threads.");
+            }
+        }
+    }
+
+    /**
+     * Verifies all expectations.
+     *
+     * @param scalingCurve the scaling curve.
+     */
+    void verify(ScalingCurve scalingCurve) {
+        final List<String> violations=new ArrayList<>();
+        for (Function<ScalingCurve, List<String>> expectation : expectations) {
+            violations.addAll(expectation.apply(scalingCurve));
+        }
+
+        if (!violations.isEmpty()) {
+            fail("\n\nScalability expectation(s) failed:\n\t" + String.join("\n\t", violations) +
+                "\n\n" + scalingCurve.toTable());
+        }
+    }
+}
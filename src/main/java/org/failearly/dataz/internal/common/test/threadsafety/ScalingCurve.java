@@ -0,0 +1,202 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * ScalingCurve is the result of a sweep ({@link ThreadSafetyVerifier#sweepThreads(int...)}). It contains the
+ * throughput and the failure rate for each level (number of threads).
+ * <br><br>
+ * The speedup of a level is it's throughput divided by the throughput of the first level. A thread safe subject,
+ * which serializes on a lock, shows a speedup near or below {@code 1} for higher levels.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ScalingCurve {
+    private static final String CSV_HEADER="threads,iterations,failedIterations,failureRate,operations," +
+        "operationsPerSecond,speedup,p50LatencyNanos,p99LatencyNanos";
+
+    private final List<Level> levels;
+
+    private ScalingCurve(List<Level> levels) {
+        this.levels=Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * @return all levels (in order of execution).
+     */
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * @param numThreads the number of threads
+     *
+     * @return the level with the given number of threads.
+     */
+    public Optional<Level> getLevel(int numThreads) {
+        return levels.stream().filter(level -> level.getNumThreads() == numThreads).findFirst();
+    }
+
+    /**
+     * @return the scaling curve as (human readable) text table.
+     */
+    public String toTable() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(String.format(Locale.ROOT, "%8s %10s %8s %9s %15s %8s %12s %12s%n",
+            "threads", "iterations", "failed", "failure%", "ops/s", "speedup", "p50(ns)", "p99(ns)"));
+        for (Level level : levels) {
+            stringBuilder.append(String.format(Locale.ROOT, "%8d %10d %8d %8.2f%% %15.0f %8.2f %12s %12s%n",
+                level.getNumThreads(),
+                level.getReport().getIterations(),
+                level.getReport().getFailedIterations(),
+                level.getReport().getFailureRate() * 100.0,
+                level.getOperationsPerSecond(),
+                level.getSpeedup(),
+                level.getLatencyAtPercentile(50.0).map(String::valueOf).orElse("-"),
+                level.getLatencyAtPercentile(99.0).map(String::valueOf).orElse("-")
+            ));
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * @return the scaling curve as CSV (incl. header line).
+     */
+    public String toCsv() {
+        final StringBuilder stringBuilder=new StringBuilder(CSV_HEADER).append('\n');
+        for (Level level : levels) {
+            stringBuilder.append(String.format(Locale.ROOT, "%d,%d,%d,%.6f,%d,%.1f,%.4f,%s,%s%n",
+                level.getNumThreads(),
+                level.getReport().getIterations(),
+                level.getReport().getFailedIterations(),
+                level.getReport().getFailureRate(),
+                level.getReport().getOperations(),
+                level.getOperationsPerSecond(),
+                level.getSpeedup(),
+                level.getLatencyAtPercentile(50.0).map(String::valueOf).orElse(""),
+                level.getLatencyAtPercentile(99.0).map(String::valueOf).orElse("")
+            ));
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Writes the CSV file. Failures will be logged only.
+     *
+     * @param csvFile the file.
+     */
+    void writeCsv(Path csvFile) {
+        try {
+            Files.createDirectories(csvFile.toAbsolutePath().getParent());
+            Files.write(csvFile, toCsv().getBytes(StandardCharsets.UTF_8));
+            LOGGER.info("Scaling curve written to {}", csvFile.toAbsolutePath());
+        } catch (IOException | UncheckedIOException ex) {
+            LOGGER.warn("Could not write scaling curve to " + csvFile, ex);
+        }
+    }
+
+    Optional<AssertionError> getFirstFailure() {
+        return levels.stream()
+            .map(level -> level.getReport().getFirstFailure())
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .findFirst();
+    }
+
+    @Override
+    public String toString() {
+        return toTable();
+    }
+
+    /**
+     * Level is one point of the scaling curve.
+     */
+    public static final class Level {
+        private final VerificationReport report;
+        private final double speedup;
+
+        private Level(VerificationReport report, double baseOperationsPerSecond) {
+            this.report=report;
+            this.speedup=baseOperationsPerSecond > 0.0 ? getOperationsPerSecond() / baseOperationsPerSecond : 0.0;
+        }
+
+        /**
+         * @return the number of threads.
+         */
+        public int getNumThreads() {
+            return report.getNumThreads();
+        }
+
+        /**
+         * @return the average throughput (operations per second) of the iterations.
+         */
+        public double getOperationsPerSecond() {
+            return report.getAverageOperationsPerSecond();
+        }
+
+        /**
+         * @return the throughput relative to the first level.
+         */
+        public double getSpeedup() {
+            return speedup;
+        }
+
+        /**
+         * @param percentile the percentile (0..100)
+         *
+         * @return the block latency at the given percentile in nanoseconds (only with
+         * {@link ThreadSafetyVerifier#measure()}).
+         */
+        public Optional<Long> getLatencyAtPercentile(double percentile) {
+            return report.getLatency().map(latency -> latency.getNanosAtPercentile(percentile));
+        }
+
+        /**
+         * @return the verification report of this level.
+         */
+        public VerificationReport getReport() {
+            return report;
+        }
+    }
+
+    /**
+     * Builder is used by {@link ThreadSafetyVerifier} while running the sweep.
+     */
+    static final class Builder {
+        private final List<Level> levels=new ArrayList<>();
+
+        Builder addLevel(VerificationReport report) {
+            final double baseOperationsPerSecond=levels.isEmpty()
+                ? report.getAverageOperationsPerSecond()
+                : levels.get(0).getOperationsPerSecond();
+            levels.add(new Level(report, baseOperationsPerSecond));
+            return this;
+        }
+
+        ScalingCurve build() {
+            return new ScalingCurve(new ArrayList<>(levels));
+        }
+    }
+}
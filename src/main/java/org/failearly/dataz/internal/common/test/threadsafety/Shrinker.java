@@ -0,0 +1,273 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * Shrinker is a (internal) class for {@link ThreadSafetyVerifier}. It minimizes a failing configuration (see
+ * {@link ThreadSafetyVerifier#shrinkOnFailure(int, Duration)}).
+ * <br><br>
+ * Each round derives smaller candidates from the current configuration, in order of preference:
+ * <ol>
+ *     <li>without one of the blocks (with roles: without one of the roles and their threads),</li>
+ *     <li>with roles: one thread less for one of the roles,</li>
+ *     <li>half or one less of the threads,</li>
+ *     <li>half or one less of the operations per thread.</li>
+ * </ol>
+ * A candidate fails reliably, if all of it's confirmation runs fail. The first candidate (in order of preference),
+ * which fails reliably, becomes the current configuration of the next round. The shrinking stops, if no candidate
+ * fails reliably or the budget has been used up (checked before each run). In both cases the smallest failing
+ * configuration found so far will be reported.
+ * <br><br>
+ * The runs are executed one after another: each run has the processors for itself and the runs do not share the
+ * state of the verifier (supplier, arbiter, listener) concurrently.
+ */
+final class Shrinker {
+    private final ThreadSafetyVerifier<?, ?, ?> verifier;
+    private final int confirmations;
+    private final long budgetNanos;
+    private long startNanos;
+    private boolean budgetExhausted=false;
+    private int runs=0;
+    private int rounds=0;
+
+    Shrinker(ThreadSafetyVerifier<?, ?, ?> verifier, int confirmations, Duration budget) {
+        this.verifier=verifier;
+        this.confirmations=confirmations;
+        this.budgetNanos=budget.toNanos();
+    }
+
+    /**
+     * @param initial the failing configuration
+     *
+     * @return the smallest configuration, which still fails reliably (or {@code initial}).
+     *
+     * @throws InterruptedException while waiting for the runs.
+     */
+    Configuration shrink(Configuration initial) throws InterruptedException {
+        startNanos=System.nanoTime();
+        Configuration current=initial;
+        Optional<Configuration> smaller=shrinkOnce(current);
+        while (smaller.isPresent()) {
+            current=smaller.get();
+            LOGGER.info("Shrink: {} still fails.", current);
+            smaller=shrinkOnce(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return the number of executed runs.
+     */
+    int getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return the number of successful shrink rounds.
+     */
+    int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * @return {@code true} if the shrinking has been stopped, because the budget has been used up.
+     */
+    boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    private Optional<Configuration> shrinkOnce(Configuration current) throws InterruptedException {
+        for (Configuration candidate : current.candidates()) {
+            final Optional<AssertionError> failure=failsReliably(candidate);
+            if (failure.isPresent()) {
+                rounds++;
+                return Optional.of(candidate.withFailure(failure.get()));
+            }
+            if (budgetExhausted) {
+                break;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<AssertionError> failsReliably(Configuration candidate) throws InterruptedException {
+        AssertionError firstFailure=null;
+        for (int i=0; i < confirmations; i++) {
+            if (System.nanoTime() - startNanos >= budgetNanos) {
+                LOGGER.warn("Shrink: budget of {} used up after {} run(s).", Duration.ofNanos(budgetNanos), runs);
+                budgetExhausted=true;
+                return Optional.empty();
+            }
+            runs++;
+            final Optional<AssertionError> failure=run(candidate);
+            if (!failure.isPresent()) {
+                return Optional.empty();
+            }
+            if (firstFailure == null) {
+                firstFailure=failure.get();
+            }
+        }
+        return Optional.ofNullable(firstFailure);
+    }
+
+    private Optional<AssertionError> run(Configuration candidate) throws InterruptedException {
+        try {
+            verifier.run(candidate);
+            return Optional.empty();
+        } catch (AssertionError failure) {
+            return Optional.of(failure);
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            LOGGER.warn("Shrink: run of " + candidate + " failed with unexpected exception.", ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Configuration is one (candidate) configuration of the shrinking. The block setting is either the weight or
+     * the number of threads (roles) of each block. A block with {@code 0} has been removed: such a configuration could
+     * not be declared by the public API, so it's failure does not claim to be replayable by seed (see
+     * {@link BlockSelection#isDeclarable()}).
+     */
+    static final class Configuration {
+        private final int numThreads;
+        private final int operationsPerThread;
+        private final int[] blockSetting;
+        private final boolean roles;
+        private final AssertionError failure;
+
+        Configuration(int numThreads, int operationsPerThread, int[] blockSetting, boolean roles, AssertionError failure) {
+            this.numThreads=numThreads;
+            this.operationsPerThread=operationsPerThread;
+            this.blockSetting=blockSetting;
+            this.roles=roles;
+            this.failure=failure;
+        }
+
+        int getNumThreads() {
+            return numThreads;
+        }
+
+        int getOperationsPerThread() {
+            return operationsPerThread;
+        }
+
+        AssertionError getFailure() {
+            return failure;
+        }
+
+        BlockSelection blockSelection() {
+            return roles ? BlockSelection.roles(blockSetting) : BlockSelection.weighted(blockSetting);
+        }
+
+        private Configuration withFailure(AssertionError failure) {
+            return new Configuration(numThreads, operationsPerThread, blockSetting, roles, failure);
+        }
+
+        private List<Configuration> candidates() {
+            final List<Configuration> candidates=new ArrayList<>();
+            if (numberOfBlocks() > 1) {
+                for (int block=0; block < blockSetting.length; block++) {
+                    if (blockSetting[block] > 0) {
+                        candidates.add(withBlockSetting(block, 0));
+                    }
+                }
+            }
+            if (roles) {
+                for (int block=0; block < blockSetting.length; block++) {
+                    if (blockSetting[block] > 1) {
+                        candidates.add(withBlockSetting(block, blockSetting[block] - 1));
+                    }
+                }
+            }
+            addIfSmaller(candidates, numThreads / 2, operationsPerThread);
+            addIfSmaller(candidates, numThreads - 1, operationsPerThread);
+            addIfSmaller(candidates, numThreads, operationsPerThread / 2);
+            addIfSmaller(candidates, numThreads, operationsPerThread - 1);
+            return candidates;
+        }
+
+        private void addIfSmaller(List<Configuration> candidates, int numThreads, int operationsPerThread) {
+            if (numThreads >= 1 && operationsPerThread >= 1
+                && !(roles && numThreads < Arrays.stream(blockSetting).sum())
+                && !(numThreads == this.numThreads && operationsPerThread == this.operationsPerThread)) {
+                final Configuration candidate=new Configuration(numThreads, operationsPerThread, blockSetting, roles, null);
+                if (!candidates.contains(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+
+        /**
+         * With roles: if all threads have a role, the threads of the changed role will be removed too.
+         */
+        private Configuration withBlockSetting(int block, int setting) {
+            final int[] newBlockSetting=blockSetting.clone();
+            newBlockSetting[block]=setting;
+            int newNumThreads=numThreads;
+            if (roles && numThreads == Arrays.stream(blockSetting).sum()) {
+                newNumThreads=Arrays.stream(newBlockSetting).sum();
+            }
+            return new Configuration(newNumThreads, operationsPerThread, newBlockSetting, roles, null);
+        }
+
+        private int numberOfBlocks() {
+            return (int) Arrays.stream(blockSetting).filter(setting -> setting > 0).count();
+        }
+
+        private List<Integer> blocks() {
+            final List<Integer> blocks=new ArrayList<>();
+            for (int block=0; block < blockSetting.length; block++) {
+                if (blockSetting[block] > 0) {
+                    blocks.add(block);
+                }
+            }
+            return blocks;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Configuration)) {
+                return false;
+            }
+            final Configuration that=(Configuration) other;
+            return numThreads == that.numThreads
+                && operationsPerThread == that.operationsPerThread
+                && roles == that.roles
+                && Arrays.equals(blockSetting, that.blockSetting);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * numThreads + operationsPerThread) + Arrays.hashCode(blockSetting);
+        }
+
+        @Override
+        public String toString() {
+            return "threads(" + numThreads + ").operationsPerThread(" + operationsPerThread + ") with blocks " +
+                blocks() + (roles ? " (times " + Arrays.toString(blockSetting) + ")" : "");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SpinParkBarrier is a (internal) class for {@link ThreadSafetyVerifier}. It's a reusable (cyclic) barrier for a fixed
+ * number of parties, each identified by it's party index ({@code 0..parties-1}).
+ * <br><br>
+ * A waiting party spins ({@link Thread#onSpinWait()}) a configurable number of times before it parks. So if all parties arrive within the spin
+ * phase, they will be released nearly at the same time by the last arriving party (no wakeup latency). The barrier
+ * does not allocate anything on {@link #await(int)}.
+ */
+final class SpinParkBarrier {
+    private final int parties;
+    private final int spins;
+    private final Thread[] waiters;
+    private final AtomicInteger arrived=new AtomicInteger();
+    private volatile int generation;
+
+    /**
+     * @param parties the number of parties.
+     * @param spins   the number of spins before park.
+     */
+    SpinParkBarrier(int parties, int spins) {
+        this.parties=parties;
+        this.spins=spins;
+        this.waiters=new Thread[parties];
+    }
+
+    /**
+     * Waits until all parties have arrived.
+     *
+     * @param party the party index
+     *
+     * @throws InterruptedException if the current thread has been interrupted while parking.
+     */
+    void await(int party) throws InterruptedException {
+        final int currentGeneration=arrive(party);
+        if (spin(currentGeneration)) {
+            return;
+        }
+
+        while (generation == currentGeneration) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Waits until all parties have arrived or the timeout has been elapsed. After a timeout the barrier is broken
+     * and must not be used any longer.
+     *
+     * @param party        the party index
+     * @param timeoutNanos the timeout in nanoseconds
+     *
+     * @return {@code false} if the timeout has been elapsed.
+     *
+     * @throws InterruptedException if the current thread has been interrupted while parking.
+     */
+    boolean await(int party, long timeoutNanos) throws InterruptedException {
+        final int currentGeneration=arrive(party);
+        if (spin(currentGeneration)) {
+            return true;
+        }
+
+        final long deadline=System.nanoTime() + timeoutNanos;
+        while (generation == currentGeneration) {
+            final long remainingNanos=deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remainingNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    private int arrive(int party) {
+        final int currentGeneration=generation;
+        waiters[party]=Thread.currentThread();
+        if (arrived.incrementAndGet() == parties) {
+            arrived.set(0);
+            generation=currentGeneration + 1;
+            unparkWaiters(party);
+        }
+        return currentGeneration;
+    }
+
+    private boolean spin(int currentGeneration) {
+        for (int i=0; i < spins; i++) {
+            if (generation != currentGeneration) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        return generation != currentGeneration;
+    }
+
+    private void unparkWaiters(int releasingParty) {
+        for (int i=0; i < parties; i++) {
+            if (i != releasingParty) {
+                LockSupport.unpark(waiters[i]);
+            }
+        }
+    }
+}
@@ -15,15 +15,17 @@ package org.failearly.dataz.internal.common.test.threadsafety;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
-import java.util.stream.Collectors;
 
 import static java.lang.Runtime.getRuntime;
 import static org.junit.Assert.fail;
@@ -38,17 +40,73 @@ import static org.junit.Assert.fail;
 public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<T,R,X>> {
 
     static final Logger LOGGER=LoggerFactory.getLogger(ThreadSafetyVerifier.class);
-    private static final Random randomNumberGenerator = new Random();
+    private static final int DEFAULT_SPINS=1_000;
+    private static final Duration DEFAULT_ITERATION_TIMEOUT=Duration.ofMinutes(5);
+    private static final String DEFAULT_NAME="thread-safety";
+    private static final int DEFAULT_SHRINK_CONFIRMATIONS=3;
+    private static final Duration DEFAULT_SHRINK_BUDGET=Duration.ofMinutes(5);
+    private static final int DEFAULT_MAX_INTERLEAVINGS=100_000;
+    private static final Path DEFAULT_REPORTS_DIRECTORY=Paths.get("build", "thread-safety");
 
     private final Optional<Supplier<T>> supplier;
 
     private int repeat=100;
     private int numThreads=getRuntime().availableProcessors();
+    private int operationsPerThread=1;
+    private int strides=1;
+    private boolean virtualThreads=false;
+    private Optional<VerificationEngine> engine=Optional.empty();
+    private Optional<Integer> spins=Optional.empty();
+    private Optional<Long> seed=Optional.empty();
+    private boolean failFast=false;
+    private Optional<Duration> duration=Optional.empty();
+    private Optional<DetectionTarget> detectionTarget=Optional.empty();
+    private Duration iterationTimeout=DEFAULT_ITERATION_TIMEOUT;
+    private boolean measureLatency=false;
+    private boolean measureResources=false;
+    private boolean recordBlockEvents=false;
+    private VerificationListener listener=VerificationListener.NO_OP;
+    private Optional<int[]> sweepThreadCounts=Optional.empty();
+    private Perturbation perturbation=Perturbation.none();
+    private Optional<Perturbation[]> comparedPerturbations=Optional.empty();
+    private int shrinkConfirmations=0;
+    private Duration shrinkBudget=DEFAULT_SHRINK_BUDGET;
+    private Optional<Integer> maxContextSwitches=Optional.empty();
+    private int maxInterleavings=DEFAULT_MAX_INTERLEAVINGS;
+    private Optional<Noise> noise=Optional.empty();
+    private int noiseThreads=0;
+    private boolean profileContention=false;
+    private String name=DEFAULT_NAME;
+    private Path reportsDirectory=DEFAULT_REPORTS_DIRECTORY;
+    private final ScalabilityExpectations scalabilityExpectations=new ScalabilityExpectations();
+    private Optional<Double> baselineTolerance=Optional.empty();
+    private Optional<Arbiter<T, R>> arbiter=Optional.empty();
+    private int prepareAhead=0;
+    private Optional<Cleanup<T>> cleanup=Optional.empty();
+    private final Map<Integer, Integer> blockTimes=new HashMap<>();
+    private final Map<Integer, Integer> blockWeights=new HashMap<>();
 
     ThreadSafetyVerifier(Supplier<T> supplier) {
         this.supplier=Optional.ofNullable(supplier);
     }
 
+    /**
+     * Used by {@link #cleanup(Cleanup)}.
+     */
+    @FunctionalInterface
+    public interface Cleanup<T> {
+        void apply(T sharedVar) throws Throwable;
+    }
+
+    /**
+     * Used by {@link #arbiter(Arbiter)}.
+     */
+    @FunctionalInterface
+    public interface Arbiter<T, R> {
+        @SuppressWarnings("DuplicateThrows")
+        void apply(T sharedVar, ActorResults<R> results) throws AssertionError, Throwable;
+    }
+
     /**
      * Create a verifier without result. So the verification must be done within the
      * {@link VerificationBlockVerifier.VerificationBlock}.
@@ -76,6 +134,30 @@ public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<
         return new ExecutionBlockVerifier<>(supplier);
     }
 
+    /**
+     * Create a verifier with primitive {@code int} results (no boxing), i.e. for counters or sequence generators.
+     *
+     * @param supplier the initial object.
+     * @param <T>      the class to test
+     *
+     * @return the verifier instance
+     */
+    public static <T> IntExecutionBlockVerifier<T> givenInt(Supplier<T> supplier) {
+        return new IntExecutionBlockVerifier<>(supplier);
+    }
+
+    /**
+     * Create a verifier with primitive {@code long} results (no boxing), i.e. for ID allocators.
+     *
+     * @param supplier the initial object.
+     * @param <T>      the class to test
+     *
+     * @return the verifier instance
+     */
+    public static <T> LongExecutionBlockVerifier<T> givenLong(Supplier<T> supplier) {
+        return new LongExecutionBlockVerifier<>(supplier);
+    }
+
 
     /**
      * Set the number of repetitions to force an error. The default is {@code 100}.
@@ -90,6 +172,156 @@ public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<
         }
 
         this.repeat=repeat;
+        this.duration=Optional.empty();
+        this.detectionTarget=Optional.empty();
+        return (X)this;
+    }
+
+    /**
+     * Adaptive number of iterations (instead of a fixed number of repetitions, see {@link #repeat(int)}): A race,
+     * which shows up with (at least) {@code probability} per iteration, should be detected with {@code confidence}.
+     * I.e. {@code detect(1e-4, 0.99)} needs {@code 46050} effective iterations.
+     * <br><br>
+     * Only iterations, in which all threads overlapped (the last thread has been released before the first thread
+     * finished) and all operations have been executed, are effective. The iterations stop as soon as the required
+     * effective iterations have been reached, but not later than {@code 10} times the required iterations (at most
+     * {@link Integer#MAX_VALUE}) or (if set) the time budget of {@link #forDuration(Duration)}. The achieved confidence could be found in the
+     * {@link VerificationReport}.
+     *
+     * @param probability the (minimum) probability of the race per iteration ({@code 0 < probability < 1}).
+     * @param confidence  the target confidence ({@code 0 < confidence < 1}).
+     *
+     * @return this
+     */
+    public final X detect(double probability, double confidence) {
+        this.detectionTarget=Optional.of(new DetectionTarget(probability, confidence));
+        return (X)this;
+    }
+
+    /**
+     * Repeat the iterations until the {@code duration} has been elapsed, instead of a fixed number of repetitions
+     * (see {@link #repeat(int)}). At least one and at most {@link Integer#MAX_VALUE} iterations will be executed. The
+     * number of completed iterations and operations could be found in the {@link VerificationReport}.
+     *
+     * @param duration the (wall-clock) time budget.
+     *
+     * @return this
+     */
+    public final X forDuration(Duration duration) {
+        if (duration == null || duration.isZero() || duration.isNegative()) {
+            throw new IllegalArgumentException("duration > 0");
+        }
+
+        this.duration=Optional.of(duration);
+        return (X)this;
+    }
+
+    /**
+     * Set the timeout of a single iteration (watchdog). If the threads have not been finished in time, the
+     * verification fails with a report containing the deadlocked threads (incl. locks and their owners) and the
+     * stack dumps of the stuck threads. The default is 5 minutes.
+     * <br><br>
+     * The stuck threads will be abandoned (interrupted, but not waited for). A {@link VerificationEngine} replaces them
+     * until they have been terminated.
+     *
+     * @param iterationTimeout the timeout of each iteration.
+     *
+     * @return this
+     */
+    public final X iterationTimeout(Duration iterationTimeout) {
+        if (iterationTimeout == null || iterationTimeout.isZero() || iterationTimeout.isNegative()) {
+            throw new IllegalArgumentException("iteration timeout > 0");
+        }
+
+        this.iterationTimeout=iterationTimeout;
+        return (X)this;
+    }
+
+    /**
+     * Measure the latency of each executed block (operation) while verifying. The latencies are recorded per thread
+     * into an allocation free histogram and merged afterwards (see {@link VerificationReport#getLatency()}). The
+     * throughput (operations per second) of each iteration is always part of the report.
+     *
+     * @return this
+     */
+    public final X measure() {
+        this.measureLatency=true;
+        return (X)this;
+    }
+
+    /**
+     * Measure the allocated bytes and the CPU time of each executed block (operation) while verifying, so allocations
+     * under contention (i.e. retry loops or defensive copies) become visible (see
+     * {@link VerificationReport#getResourceUsage()}). The measurements are recorded per thread and block and merged
+     * afterwards.
+     * <br><br>
+     * Uses {@link com.sun.management.ThreadMXBean} (if supported by the JVM). Not supported for
+     * {@link #onVirtualThreads()} (the counters are per carrier thread).
+     *
+     * @return this
+     */
+    public final X measureResources() {
+        this.measureResources=true;
+        return (X)this;
+    }
+
+    /**
+     * Emit a Java Flight Recorder event for each executed block ({@code org.failearly.dataz.threadsafety.BlockExecution}),
+     * in addition to the event of each iteration ({@code org.failearly.dataz.threadsafety.Iteration}). Without a
+     * running recording (i.e. {@code -XX:StartFlightRecording}), no event will be created at all.
+     *
+     * @return this
+     */
+    public final X recordBlockEvents() {
+        this.recordBlockEvents=true;
+        return (X)this;
+    }
+
+    /**
+     * The listener will be notified about the runs, iterations and failures (and optionally about each executed
+     * block) of the verification, i.e. to export metrics (see {@link CountingListener}). The block callbacks are called
+     * by the worker threads on the measured path, so they must be thread safe and cheap.
+     *
+     * @param listener the listener
+     *
+     * @return this
+     */
+    public final X listener(VerificationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null.");
+        }
+
+        this.listener=listener;
+        return (X)this;
+    }
+
+    /**
+     * Stop all threads and iterations as soon as any block has failed (assertion error or unexpected exception).
+     * Otherwise each thread executes all of it's operations, before the iteration fails.
+     *
+     * @return this
+     */
+    public final X failFast() {
+        this.failFast=true;
+        return (X)this;
+    }
+
+    /**
+     * The arbiter runs once per iteration after all threads have finished (done barrier). It has access to the
+     * shared instance and to the results of all actors (threads), so it could check invariants across all operations
+     * (i.e. "sum of withdrawals equals balance delta") without any synchronization inside the (measured) blocks.
+     * <br><br>
+     * The arbiter fails the iteration by throwing an {@link AssertionError} (any other exception fails as well).
+     *
+     * @param arbiter the arbiter
+     *
+     * @return this
+     */
+    public final X arbiter(Arbiter<T, R> arbiter) {
+        if (arbiter == null) {
+            throw new IllegalArgumentException("Arbiter must not be null.");
+        }
+        this.arbiter=Optional.of(arbiter);
         return (X)this;
     }
 
@@ -126,28 +358,770 @@ public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<
         );
     }
 
-    @SuppressWarnings("ThrowFromFinallyBlock")
-    public final void verify() throws Throwable {
+    /**
+     * Run each thread (contender) on a virtual thread instead of a platform thread. So you could use thousands of
+     * threads (see {@link #threads(int)}). Pinning events (blocking while holding a monitor) caused by the shared
+     * instance will be reported.
+     * <br><br>
+     * Requires a JVM with virtual thread support (Java 21+).
+     *
+     * @return this
+     *
+     * @throws IllegalStateException if the JVM does not support virtual threads.
+     */
+    public final X onVirtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM (Java 21+ required)!");
+        }
+
+        this.virtualThreads=true;
+        return (X)this;
+    }
+
+    /**
+     * Run the threads on the (long-lived) {@code engine} instead of a new thread pool for each {@link #verify()}. The
+     * engine could be shared across verifier instances and test classes.
+     *
+     * @param engine the verification engine.
+     *
+     * @return this
+     *
+     * @see VerificationEngine#shared()
+     * @see VerificationEngine#create(int)
+     */
+    public final X using(VerificationEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Verification engine must not be null.");
+        }
+
+        this.engine=Optional.of(engine);
+        return (X)this;
+    }
+
+    /**
+     * Shortcut for {@code using(VerificationEngine.shared())}.
+     *
+     * @return this
+     *
+     * @see #using(VerificationEngine)
+     */
+    public final X onSharedEngine() {
+        return using(VerificationEngine.shared());
+    }
+
+    /**
+     * Set the number of operations (blocks) each thread executes back to back on the shared instance, after it has
+     * been released by the start barrier. The default is {@code 1}.
+     * <br><br>
+     * More operations per thread increase the contention on the shared instance, without paying the synchronization
+     * costs of an iteration for each single operation. Each operation chooses it's block randomly (unless
+     * {@link #times(int)} has been used).
+     *
+     * @param operationsPerThread the number of operations per thread and iteration.
+     *
+     * @return this
+     */
+    public final X operationsPerThread(int operationsPerThread) {
+        if (operationsPerThread < 1) {
+            throw new IllegalArgumentException("#Operations per thread >= 1");
+        }
+
+        this.operationsPerThread=operationsPerThread;
+        return (X)this;
+    }
+
+    /**
+     * Create the shared instances for the next iterations ahead on a background thread, while the current iteration
+     * runs. At most {@code instances} prepared instances will be queued. Useful for shared instances, which are
+     * expensive to create (i.e. embedded stores or pre-filled caches). The default is {@code 0}: The shared instances
+     * are created between the iterations.
+     *
+     * @param instances the maximum number of prepared instances.
+     *
+     * @return this
+     *
+     * @see #cleanup(Cleanup)
+     */
+    public final X prepareAhead(int instances) {
+        if (instances < 0) {
+            throw new IllegalArgumentException("#Instances >= 0");
+        }
+
+        this.prepareAhead=instances;
+        return (X)this;
+    }
+
+    /**
+     * Cleanup (i.e. close) each shared instance after it's iteration has been verified. The cleanup runs
+     * asynchronously on a background thread, failures will be logged only. {@link #verify()} waits for all
+     * cleanups.
+     *
+     * @param cleanup the cleanup
+     *
+     * @return this
+     */
+    public final X cleanup(Cleanup<T> cleanup) {
+        if (cleanup == null) {
+            throw new IllegalArgumentException("Cleanup must not be null.");
+        }
+        this.cleanup=Optional.of(cleanup);
+        return (X)this;
+    }
+
+    /**
+     * Each iteration uses {@code strides} fresh shared instances. After the start barrier each thread executes it's
+     * operations on the first instance, then on the second and so on. The threads walk through the instances in
+     * lockstep, so each iteration (barrier cycle) yields {@code strides} independent attempts to detect a race. The
+     * default is {@code 1}.
+     * <br><br>
+     * Each instance is verified separately (incl. {@link #arbiter(Arbiter)}).
+     *
+     * @param strides the number of shared instances per iteration.
+     *
+     * @return this
+     */
+    public final X stride(int strides) {
+        if (strides < 1) {
+            throw new IllegalArgumentException("#Strides >= 1");
+        }
+
+        this.strides=strides;
+        return (X)this;
+    }
+
+    /**
+     * The last added block becomes a role, which is executed by {@code times} threads (for all of their operations).
+     * Either all or no block must have a role. The roles are assigned to the threads in order of declaration, so
+     * each iteration contains the same mix:
+     * <pre>
+     *     .when(writer).times(1).or(reader).times(31).threads(32)
+     * </pre>
+     * If there are more threads than roles, the assignment starts again with the first role. There must not be less
+     * threads than roles (the sum of all times).
+     *
+     * @param times the number of threads executing the last added block.
+     *
+     * @return this
+     */
+    public final X times(int times) {
+        if (times < 1) {
+            throw new IllegalArgumentException("Times >= 1");
+        }
+
+        this.blockTimes.put(lastBlockIdx("times"), times);
+        return (X)this;
+    }
+
+    /**
+     * The last added block will be chosen with a probability proportional to it's weight. The default weight of
+     * each block is {@code 1}.
+     *
+     * @param weight the weight of the last added block.
+     *
+     * @return this
+     */
+    public final X weight(int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight >= 1");
+        }
+
+        this.blockWeights.put(lastBlockIdx("weight"), weight);
+        return (X)this;
+    }
+
+    private int lastBlockIdx(String methodName) {
+        if (numberOfBlocks() == 0) {
+            throw new IllegalArgumentException(methodName + "() must follow a block! Please apply when() or " +
+                "whenAndThen() first.");
+        }
+        return numberOfBlocks() - 1;
+    }
+
+    /**
+     * Set the seed for the (random) block choices. Each thread uses it's own random generator, split from the
+     * iteration's seed. The default is a random seed.
+     * <br><br>
+     * The failure message contains the seed of the failed iteration, so the failed iteration could be replayed by
+     * using it's seed (with the same number of threads and operations per thread) and {@code repeat(1)}.
+     *
+     * @param seed the seed
+     *
+     * @return this
+     */
+    public final X seed(long seed) {
+        this.seed=Optional.of(seed);
+        return (X)this;
+    }
+
+    /**
+     * Set the number of spins of each thread at the start barrier, before the thread parks. If all threads arrive
+     * within their spin phase, they will be released nearly at the same time. The default is {@code 1000}, if the
+     * number of threads does not exceed the number of available processors/cores, otherwise {@code 0} (spinning
+     * threads would delay the arrival of the other threads).
+     *
+     * @param spins the number of spins ({@code 0} means park immediately).
+     *
+     * @return this
+     *
+     * @see VerificationReport#getStartSkewStatistics()
+     */
+    public final X spinBeforePark(int spins) {
+        if (spins < 0) {
+            throw new IllegalArgumentException("spins >= 0");
+        }
+
+        this.spins=Optional.of(spins);
+        return (X)this;
+    }
+
+    /**
+     * Perturb the timing of the workers, to widen the race windows (i.e. {@code perturb(Perturbation.yield(0.1))}).
+     * The default is {@link Perturbation#none()}.
+     *
+     * @param perturbation the perturbation strategy.
+     *
+     * @return this
+     *
+     * @see #comparePerturbations(Perturbation...)
+     */
+    public final X perturb(Perturbation perturbation) {
+        if (perturbation == null) {
+            throw new IllegalArgumentException("Perturbation must not be null.");
+        }
+
+        this.perturbation=perturbation;
+        return (X)this;
+    }
+
+    /**
+     * Run the verification with each of the given perturbation strategies, instead of a single one (see
+     * {@link #perturb(Perturbation)}). For each strategy the detection rate (failed iterations per second) will be
+     * collected ({@link VerificationReport#getPerturbationComparison()}) and logged as table. Use a time budget
+     * ({@link #forDuration(Duration)}), so all strategies get the same time.
+     * <br><br>
+     * Like a sweep, the comparison does not stop on the first failed iteration, but fails after all strategies have
+     * been run.
+     *
+     * @param perturbations the perturbation strategies, i.e. {@code comparePerturbations(Perturbation.none(),
+     *                      Perturbation.yield(0.1), Perturbation.park(0.01, Duration.ofNanos(10_000)))}.
+     *
+     * @return this
+     */
+    public final X comparePerturbations(Perturbation... perturbations) {
+        if (perturbations == null || perturbations.length == 0) {
+            throw new IllegalArgumentException("At least one perturbation expected.");
+        }
+        for (Perturbation strategy : perturbations) {
+            if (strategy == null) {
+                throw new IllegalArgumentException("Perturbation must not be null.");
+            }
+        }
+
+        this.comparedPerturbations=Optional.of(perturbations.clone());
+        return (X)this;
+    }
+
+    /**
+     * Run background noise threads during the verification, which allocate (to trigger the garbage collector) or burn
+     * CPU.
+     *
+     * @param noise      the kind of noise.
+     * @param numThreads the number of noise threads.
+     *
+     * @return this
+     */
+    public final X noise(Noise noise, int numThreads) {
+        if (noise == null) {
+            throw new IllegalArgumentException("Noise must not be null.");
+        }
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("#Noise threads >= 1");
+        }
+
+        this.noise=Optional.of(noise);
+        this.noiseThreads=numThreads;
+        return (X)this;
+    }
+
+    /**
+     * Profile the lock contention of the subject: The blocked and waited counts and times of the workers (while
+     * executing their operations) and samples of the locks, the workers are blocked on or waiting for. The result is
+     * part of the {@link VerificationReport} ({@link VerificationReport#getContention()}).
+     * <br><br>
+     * Enables the thread contention monitoring of the JVM (if supported) during the verification. Not supported for
+     * {@link #onVirtualThreads()}.
+     *
+     * @return this
+     */
+    public final X profileContention() {
+        this.profileContention=true;
+        return (X)this;
+    }
+
+    /**
+     * Shortcut for {@code shrinkOnFailure(3, Duration.ofMinutes(5))}.
+     *
+     * @return this
+     *
+     * @see #shrinkOnFailure(int, Duration)
+     */
+    public final X shrinkOnFailure() {
+        return shrinkOnFailure(DEFAULT_SHRINK_CONFIRMATIONS, DEFAULT_SHRINK_BUDGET);
+    }
+
+    /**
+     * Shortcut for {@code shrinkOnFailure(confirmations, Duration.ofMinutes(5))}.
+     *
+     * @param confirmations the number of runs of each candidate, which all must fail.
+     *
+     * @return this
+     *
+     * @see #shrinkOnFailure(int, Duration)
+     */
+    public final X shrinkOnFailure(int confirmations) {
+        return shrinkOnFailure(confirmations, DEFAULT_SHRINK_BUDGET);
+    }
+
+    /**
+     * If the verification fails, the failing configuration will be minimized automatically: The verification will be
+     * repeated with less blocks (or roles), less threads and less operations per thread, as long as it still fails
+     * reliably (all of the {@code confirmations} runs fail). The failure contains the smallest failing configuration
+     * and it's failure (incl. the seed of the failed iteration). A configuration without some of the blocks could
+     * not be declared by {@link #weight(int)} or {@link #times(int)}, so it's failure could not be replayed by seed.
+     * <br><br>
+     * The runs are executed one after another. If the {@code budget} has been used up (checked before each run), the
+     * shrinking stops and the smallest failing configuration found so far will be reported. Not supported for
+     * {@link #sweepThreads(int...)} or {@link #comparePerturbations(Perturbation...)}.
+     *
+     * @param confirmations the number of runs of each candidate, which all must fail.
+     * @param budget        the maximum duration of the shrinking.
+     *
+     * @return this
+     */
+    public final X shrinkOnFailure(int confirmations, Duration budget) {
+        if (confirmations < 1) {
+            throw new IllegalArgumentException("#Confirmations >= 1");
+        }
+        if (budget == null || budget.isZero() || budget.isNegative()) {
+            throw new IllegalArgumentException("shrink budget > 0");
+        }
+
+        this.shrinkConfirmations=confirmations;
+        this.shrinkBudget=budget;
+        return (X)this;
+    }
+
+    /**
+     * Shortcut for {@code exploreInterleavings(maxContextSwitches, 100_000)}.
+     *
+     * @param maxContextSwitches the maximum number of context switches of an interleaving.
+     *
+     * @return this
+     *
+     * @see #exploreInterleavings(int, int)
+     */
+    public final X exploreInterleavings(int maxContextSwitches) {
+        return exploreInterleavings(maxContextSwitches, DEFAULT_MAX_INTERLEAVINGS);
+    }
+
+    /**
+     * Explore the interleavings of the threads systematically, instead of random scheduling: Only one thread runs at
+     * a time and switches only between it's operations and at the switch points of the subject (see
+     * {@link Interleavings#switchPoint(String)}). All interleavings with at most {@code maxContextSwitches} context
+     * switches will be explored (depth first), until the first one fails. The failure contains the failing
+     * interleaving step by step.
+     * <br><br>
+     * The operations of each thread are chosen once (by the seed). Each interleaving runs on a new shared instance.
+     * The subject must be deterministic (without switch points a thread executes each operation atomically). Not
+     * supported for {@link #sweepThreads(int...)}, {@link #comparePerturbations(Perturbation...)} or
+     * {@link #onVirtualThreads()}. A perturbation, noise, profiling or shrinking is ignored.
+     *
+     * @param maxContextSwitches the maximum number of context switches of an interleaving.
+     * @param maxInterleavings   the maximum number of explored interleavings.
+     *
+     * @return this
+     */
+    public final X exploreInterleavings(int maxContextSwitches, int maxInterleavings) {
+        if (maxContextSwitches < 0) {
+            throw new IllegalArgumentException("#Context switches >= 0");
+        }
+        if (maxInterleavings < 1) {
+            throw new IllegalArgumentException("#Interleavings >= 1");
+        }
+
+        this.maxContextSwitches=Optional.of(maxContextSwitches);
+        this.maxInterleavings=maxInterleavings;
+        return (X)this;
+    }
+
+    /**
+     * Run the verification with each of the given number of threads (a sweep), instead of a single number of threads
+     * (see {@link #threads(int)}). For each level the throughput and the failure rate will be collected, so the
+     * result is a scaling curve ({@link VerificationReport#getScalingCurve()}). The curve will be logged as table and
+     * written as CSV file into the reports directory (see {@link #named(String)} and {@link #reportsTo(Path)}).
+     * <br><br>
+     * The sweep does not stop on the first failed iteration, but fails after all levels have been run.
+     *
+     * @param threadCounts the number of threads of each level, i.e. {@code sweepThreads(1, 2, 4, 8, 16)}.
+     *
+     * @return this
+     */
+    public final X sweepThreads(int... threadCounts) {
+        if (threadCounts == null || threadCounts.length == 0) {
+            throw new IllegalArgumentException("At least one thread count expected.");
+        }
+        for (int threadCount : threadCounts) {
+            if (threadCount < 1) {
+                throw new IllegalArgumentException("#Threads >= 1");
+            }
+        }
+
+        this.sweepThreadCounts=Optional.of(threadCounts.clone());
+        return (X)this;
+    }
+
+    /**
+     * Set the name of the verification, used for the file names of reports. The default is
+     * {@code "thread-safety"}.
+     *
+     * @param name the name (should be unique within the test suite).
+     *
+     * @return this
+     */
+    public final X named(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name must not be empty.");
+        }
+
+        this.name=name.trim();
+        return (X)this;
+    }
+
+    /**
+     * Set the directory for (machine readable) reports. The default is {@code build/thread-safety}.
+     *
+     * @param reportsDirectory the reports directory
+     *
+     * @return this
+     */
+    public final X reportsTo(Path reportsDirectory) {
+        if (reportsDirectory == null) {
+            throw new IllegalArgumentException("Reports directory must not be null.");
+        }
+
+        this.reportsDirectory=reportsDirectory;
+        return (X)this;
+    }
+
+    /**
+     * Expect that the throughput at {@code numThreads} is at least {@code minSpeedup} times the throughput of the
+     * first level of the sweep (see {@link #sweepThreads(int...)}), i.e. {@code sweepThreads(1, 2, 4, 8)
+     * .expectSpeedup(8, 5.0)}.
+     *
+     * @param numThreads the number of threads (must be a level of the sweep).
+     * @param minSpeedup the minimum speedup.
+     *
+     * @return this
+     */
+    public final X expectSpeedup(int numThreads, double minSpeedup) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("#Threads >= 1");
+        }
+        if (minSpeedup <= 0.0) {
+            throw new IllegalArgumentException("Speedup > 0");
+        }
+
+        this.scalabilityExpectations.expectSpeedup(numThreads, minSpeedup);
+        return (X)this;
+    }
+
+    /**
+     * Expect that the block latency at the given percentile does not exceed {@code maxLatency} (for each level of a
+     * sweep). Implies {@link #measure()}.
+     *
+     * @param percentile the percentile (0..100), i.e. {@code 99.0}.
+     * @param maxLatency the maximum latency.
+     *
+     * @return this
+     */
+    public final X expectLatencyAtPercentile(double percentile, Duration maxLatency) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("0 <= percentile <= 100");
+        }
+        if (maxLatency == null || maxLatency.isNegative()) {
+            throw new IllegalArgumentException("Latency >= 0");
+        }
+
+        this.scalabilityExpectations.expectLatencyAtPercentile(percentile, maxLatency.toNanos());
+        return measure();
+    }
+
+    /**
+     * Compare the throughput (and with {@link #measure()} the p99 latency) of each level with a persisted baseline
+     * ({@code <reportsDirectory>/<name>-baseline.properties}). The verification fails, if the throughput is lower
+     * (or the latency is higher) than the baseline, beyond the tolerance band.
+     * <br><br>
+     * If there is no baseline yet, the current results will be stored as baseline. Use the system property
+     * {@code -Dthreadsafety.baselines.update=true} to overwrite existing baselines.
+     *
+     * @param tolerance the tolerance, i.e. {@code 0.2} for 20%.
+     *
+     * @return this
+     *
+     * @see #named(String)
+     * @see #reportsTo(Path)
+     */
+    public final X compareWithBaseline(double tolerance) {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("Tolerance >= 0");
+        }
+
+        this.baselineTolerance=Optional.of(tolerance);
+        return (X)this;
+    }
+
+    /**
+     * Runs the verification. Fails (by throwing an {@link AssertionError}) if the shared instance is not thread
+     * safe.
+     *
+     * @return the report of the (successful) verification. In case of {@link #sweepThreads(int...)} the report of the
+     * last level containing the scaling curve.
+     *
+     * @throws Throwable any assertion error or unexpected exception.
+     */
+    public final VerificationReport verify() throws Throwable {
         checkMandatoryFields();
+        final VerificationReport report;
+        if (sweepThreadCounts.isPresent()) {
+            report=verifySweep(sweepThreadCounts.get());
+        } else if (comparedPerturbations.isPresent()) {
+            report=verifyPerturbations(comparedPerturbations.get());
+        } else if (maxContextSwitches.isPresent()) {
+            report=verifyInterleavings(maxContextSwitches.get());
+        } else {
+            report=verifyAndShrink();
+        }
+        LOGGER.info("{}", report);
+        verifyScalabilityExpectations(report);
+        return report;
+    }
+
+    private void verifyScalabilityExpectations(VerificationReport report) {
+        final ScalabilityExpectations expectations=scalabilityExpectations();
+        if (!expectations.isEmpty()) {
+            expectations.verify(
+                report.getScalingCurve().orElseGet(() -> new ScalingCurve.Builder().addLevel(report).build())
+            );
+        }
+    }
+
+    private ScalabilityExpectations scalabilityExpectations() {
+        final ScalabilityExpectations expectations=new ScalabilityExpectations(scalabilityExpectations);
+        baselineTolerance.ifPresent(tolerance -> expectations.expectBaseline(
+            new ScalabilityBaseline(reportsDirectory.resolve(name + "-baseline.properties"), tolerance)
+        ));
+        return expectations;
+    }
+
+    private VerificationReport verifyAndShrink() throws Throwable {
+        try {
+            return verify(settings(numThreads, perturbation, false));
+        } catch (AssertionError failure) {
+            if (shrinkConfirmations == 0) {
+                throw failure;
+            }
+            throw shrink(failure);
+        }
+    }
+
+    private AssertionError shrink(AssertionError failure) throws InterruptedException {
+        LOGGER.info("Shrink failing configuration of {}", name);
+        final Shrinker shrinker=new Shrinker(this, shrinkConfirmations, shrinkBudget);
+        final Shrinker.Configuration smallest=shrinker.shrink(new Shrinker.Configuration(
+            numThreads,
+            operationsPerThread,
+            blockTimes.isEmpty() ? blockSetting(blockWeights) : blockSetting(blockTimes),
+            !blockTimes.isEmpty(),
+            failure
+        ));
+        return new AssertionError("\n\nSmallest failing configuration (" + shrinker.getRounds() + " shrink step(s), " +
+            shrinker.getRuns() + " run(s)" + (shrinker.isBudgetExhausted() ? ", shrink budget of " + shrinkBudget +
+            " used up" : "") + "): " + smallest + smallest.getFailure().getMessage(), failure);
+    }
+
+    /**
+     * Runs a single shrink candidate (see {@link Shrinker}).
+     */
+    final VerificationReport run(Shrinker.Configuration configuration) throws Throwable {
+        return verify(settings(
+            configuration.getNumThreads(),
+            configuration.getOperationsPerThread(),
+            configuration.blockSelection(),
+            perturbation,
+            false
+        ));
+    }
+
+    private VerificationReport verifySweep(int[] threadCounts) throws Throwable {
+        final ScalingCurve.Builder scalingCurve=new ScalingCurve.Builder();
+        VerificationReport report=null;
+        for (int threadCount : threadCounts) {
+            LOGGER.info("Sweep: start level with {} thread(s)", threadCount);
+            report=verify(settings(threadCount, perturbation, true));
+            scalingCurve.addLevel(report);
+        }
+
+        final ScalingCurve curve=scalingCurve.build();
+        LOGGER.info("Scaling curve of {}:\n{}", name, curve.toTable());
+        curve.writeCsv(reportsDirectory.resolve(name + "-scaling.csv"));
+
+        final Optional<AssertionError> firstFailure=curve.getFirstFailure();
+        if (firstFailure.isPresent()) {
+            fail("\n\nSweep detected failures:\n" + curve.toTable() + firstFailure.get().getMessage());
+        }
+        return report.withScalingCurve(curve);
+    }
+
+    private VerificationReport verifyPerturbations(Perturbation[] perturbations) throws Throwable {
+        final PerturbationComparison.Builder comparison=new PerturbationComparison.Builder();
+        VerificationReport report=null;
+        for (Perturbation strategy : perturbations) {
+            LOGGER.info("Compare perturbations: start with {}", strategy);
+            report=verify(settings(numThreads, strategy, true));
+            comparison.add(report);
+        }
+
+        final PerturbationComparison perturbationComparison=comparison.build();
+        LOGGER.info("Perturbation comparison of {}:\n{}", name, perturbationComparison.toTable());
+
+        final Optional<AssertionError> firstFailure=perturbationComparison.getFirstFailure();
+        if (firstFailure.isPresent()) {
+            fail("\n\nPerturbations detected failures:\n" + perturbationComparison.toTable() +
+                firstFailure.get().getMessage());
+        }
+        return report.withPerturbationComparison(perturbationComparison);
+    }
+
+    private VerificationReport verifyInterleavings(int maxContextSwitches) throws Throwable {
+        final VerificationSettings settings=settings(numThreads, Perturbation.none(), false);
+        final VerificationReport.Builder report=new VerificationReport.Builder(settings);
+        new InterleavingExplorer<>(this, settings, maxContextSwitches, maxInterleavings, report).execute();
+        return report.build();
+    }
+
+    private VerificationReport verify(VerificationSettings settings) throws Throwable {
+        if (engine.isPresent()) {
+            return verifyOnEngine(engine.get(), settings);
+        }
+        return verifyOnNewThreadPool(settings);
+    }
+
+    private VerificationReport verifyOnEngine(VerificationEngine verificationEngine, VerificationSettings settings) throws Throwable {
+        final VerificationReport.Builder report=new VerificationReport.Builder(settings);
+        final VerificationRun<T, R> verificationRun=new VerificationRun<>(this, settings, report);
+        final ExecutorService executorService=verificationEngine.reserve(settings.numThreads);
+        try {
+            verificationRun.execute(executorService);
+        } finally {
+            verificationEngine.release(settings.numThreads, verificationRun.getAbandonedWorkerTerminations());
+        }
+        return report.build();
+    }
+
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private VerificationReport verifyOnNewThreadPool(VerificationSettings settings) throws Throwable {
+        final VerificationReport.Builder report=new VerificationReport.Builder(settings);
+        final VerificationRun<T, R> verificationRun=new VerificationRun<>(this, settings, report);
         final ExecutorService executorService=Executors.newFixedThreadPool(
-                            numThreads,
+                            settings.numThreads,
                             threadFactory(this.getClass())
                         );
+        final PinnedThreadsRecorder pinnedThreadsRecorder=virtualThreads ? PinnedThreadsRecorder.start() : null;
         try {
-            repeat(this.repeat, executorService, this::doVerify);
+            verificationRun.execute(executorService);
         } finally {
-            shutdown(executorService);
+            if (verificationRun.getAbandonedWorkers() > 0) {
+                abandon(executorService, verificationRun.getAbandonedWorkers());
+            } else {
+                shutdown(executorService);
+            }
+            if (pinnedThreadsRecorder != null) {
+                report.pinningEvents(pinnedThreadsRecorder.stopAndReport());
+            }
         }
+        return report.build();
     }
 
-    private static class TSVThreadFactory implements ThreadFactory {
+    private VerificationSettings settings(int numThreads, Perturbation perturbation, boolean countFailures) {
+        return settings(numThreads, operationsPerThread, blockSelection(), perturbation, countFailures);
+    }
+
+    private VerificationSettings settings(
+        int numThreads,
+        int operationsPerThread,
+        BlockSelection blockSelection,
+        Perturbation perturbation,
+        boolean countFailures
+    ) {
+        return new VerificationSettings(
+            numThreads,
+            operationsPerThread,
+            strides,
+            prepareAhead,
+            spins.orElse(defaultSpins(numThreads)),
+            seed.orElseGet(() -> new SplittableRandom().nextLong()),
+            failFast,
+            repeat,
+            duration.map(Duration::toNanos).orElse(0L),
+            iterationTimeout.toNanos(),
+            measureLatency,
+            countFailures,
+            blockSelection,
+            detectionTarget.orElse(null),
+            perturbation,
+            noise.orElse(null),
+            noiseThreads,
+            profileContention,
+            measureResources,
+            recordBlockEvents,
+            listener
+        );
+    }
+
+    private BlockSelection blockSelection() {
+        if (!blockTimes.isEmpty()) {
+            return BlockSelection.roles(blockSetting(blockTimes));
+        }
+        if (!blockWeights.isEmpty()) {
+            return BlockSelection.weighted(blockSetting(blockWeights));
+        }
+        return BlockSelection.uniform(numberOfBlocks());
+    }
+
+    private int[] blockSetting(Map<Integer, Integer> settingPerBlock) {
+        final int[] setting=new int[numberOfBlocks()];
+        for (int blockIdx=0; blockIdx < setting.length; blockIdx++) {
+            setting[blockIdx]=settingPerBlock.getOrDefault(blockIdx, 1);
+        }
+        return setting;
+    }
+
+    private static int defaultSpins(int numThreads) {
+        return numThreads <= getRuntime().availableProcessors() ? DEFAULT_SPINS : 0;
+    }
+
+    static class TSVThreadFactory implements ThreadFactory {
         private static final AtomicInteger poolNumber=new AtomicInteger(1);
         private final ThreadGroup group = Thread.currentThread().getThreadGroup();
         private final AtomicInteger threadNumber=new AtomicInteger(1);
         private final String namePrefix;
 
         private TSVThreadFactory(Class<? extends ThreadSafetyVerifier> tsvClass) {
-            namePrefix=tsvClass.getSimpleName()+"-" +
+            this(tsvClass.getSimpleName());
+        }
+
+        TSVThreadFactory(String name) {
+            namePrefix=name+"-" +
                 poolNumber.getAndIncrement() +
                 "-thread-";
         }
@@ -159,10 +1133,18 @@ public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<
             return thread;
         }
     }
-    private static ThreadFactory threadFactory(Class<? extends ThreadSafetyVerifier> tsvClass) {
+    private ThreadFactory threadFactory(Class<? extends ThreadSafetyVerifier> tsvClass) {
+        if (virtualThreads) {
+            return VirtualThreads.threadFactory(tsvClass.getSimpleName() + "-virtual-thread-");
+        }
         return new TSVThreadFactory(tsvClass);
     }
 
+    private static void abandon(ExecutorService executorService, int abandonedThreads) {
+        executorService.shutdownNow();
+        LOGGER.error("Executor Service abandoned with {} stuck thread(s)!", abandonedThreads);
+    }
+
     private static void shutdown(ExecutorService executorService) throws InterruptedException {
         executorService.shutdown();
         if (executorService.awaitTermination(10L, TimeUnit.SECONDS)) {
@@ -172,97 +1154,130 @@ public abstract class ThreadSafetyVerifier<T, R, X extends ThreadSafetyVerifier<
         }
     }
 
-    private void doVerify(ExecutorService es, int num) throws Throwable {
-        LOGGER.info("Start iteration no {}", num);
-        final CountDownLatch startedSignal=new CountDownLatch(numThreads);
-        final CountDownLatch doneSignal=new CountDownLatch(numThreads);
+    final InstancePipeline<T> newInstancePipeline(int prepareAhead) {
+        return new InstancePipeline<>(supplier.get(), prepareAhead, cleanup.orElse(null), name);
+    }
 
-        final List<Future<BlockResult<R>>> results=es.invokeAll(
-            createCallableList(startedSignal, doneSignal)
-        );
+    final String getName() {
+        return name;
+    }
 
-        LOGGER.info("Wait for done.");
-        doneSignal.await();
+    final NoiseThreads newNoiseThreads(Noise noise, int numThreads) {
+        return new NoiseThreads(noise, numThreads, name);
+    }
 
-        doVerifyForAssertionsAndUnexpectedExceptions(results);
-        doVerifyResults(results);
+    final ContentionProfiler newContentionProfiler(int numThreads) {
+        return new ContentionProfiler(numThreads, name);
     }
 
-    static int nextRandomIdx(int size) {
-        return randomNumberGenerator.nextInt(size);
+    abstract int numberOfBlocks();
+
+    abstract ResultSlots<R> newResultSlots(
+        int numThreads,
+        int operationsPerThread,
+        Optional<OutcomeHistogram<R>> outcomes
+    );
+
+    /**
+     * @return the outcome histogram of a run, shared by all result slots (if outcomes are counted).
+     */
+    Optional<OutcomeHistogram<R>> newOutcomeHistogram() {
+        return Optional.empty();
     }
 
-    abstract void doVerifyResults(List<Future<BlockResult<R>>> results);
+    /**
+     * Executes the block and records it's value or failure into {@code results}.
+     *
+     * @return {@code true} if the block has been executed successfully.
+     */
+    abstract boolean doExecuteBlock(int blockIdx, T sharedInstance, ResultSlots<R> results, int slot);
 
-    private void doVerifyForAssertionsAndUnexpectedExceptions(List<Future<BlockResult<R>>> results) throws Throwable {
-        final List<BlockResult<R>> failures=results.stream()
-            .filter(Future::isDone)
-            .map(this::toBlockResult)
-            .filter(BlockResult::isNotOk)
-            .collect(Collectors.toList());
+    abstract void doVerifyResults(ResultSlots<R> results);
 
-        if (!failures.isEmpty()) {
+    final void doVerifyForAssertionsAndUnexpectedExceptions(
+        ResultSlots<R> results,
+        Supplier<String> iterationDescription
+    ) {
+        final int numberOfFailures=results.numberOfFailures();
+        if (numberOfFailures > 0) {
             final StringBuilder stringBuilder=new StringBuilder();
             stringBuilder
                 .append("\n\n")
                 .append("Caught ")
-                .append(failures.size())
-                .append(" assertion error(s) or unexpected exception(s)");
-
-            final String failureMessage=failures.stream().reduce(
-                stringBuilder,
-                (sb, br) -> br.appendTo(sb),
-                (sb1, sb2) -> new StringBuilder().append(sb1).append(sb2)
-            ).toString();
+                .append(numberOfFailures)
+                .append(" assertion error(s) or unexpected exception(s)")
+                .append(iterationDescription.get());
 
-            fail(failureMessage);
+            fail(results.appendFailuresTo(stringBuilder).toString());
         }
     }
 
-    final BlockResult<R> toBlockResult(Future<BlockResult<R>> f) {
-        try {
-            return f.get();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+    final boolean hasArbiter() {
+        return arbiter.isPresent();
     }
 
-    private List<Callable<BlockResult<R>>> createCallableList(
-        CountDownLatch startedSignal,
-        CountDownLatch doneSignal) throws Throwable {
-        final T initialValue=supplier.get().get();
-        return doCreateCallableList(() -> doExecuteBlock(startedSignal, doneSignal, initialValue));
+    final void doArbiter(T sharedInstance, ActorResults<R> results, Supplier<String> iterationDescription) {
+        if (!arbiter.isPresent()) {
+            return;
+        }
+        try {
+            arbiter.get().apply(sharedInstance, results);
+        } catch (AssertionError ae) {
+            throw new AssertionError("\n\nArbiter failed" + iterationDescription.get() + "\n\n" + ae.getMessage(), ae);
+        } catch (Throwable ex) {
+            throw new AssertionError("\n\nArbiter caught unexpected exception" + iterationDescription.get(), ex);
+        }
     }
 
-    private List<Callable<BlockResult<R>>> doCreateCallableList(Callable<BlockResult<R>> callable) {
-        final List<Callable<BlockResult<R>>> callableList=new ArrayList<>();
-        for (int i=0; i < this.numThreads; i++) {
-            callableList.add(callable);
+    private void checkThreadsForRoles(BlockSelection blockSelection) {
+        if (!blockSelection.hasRoles()) {
+            return;
+        }
+        for (int threadCount : sweepThreadCounts.orElse(new int[]{numThreads})) {
+            if (threadCount < blockSelection.numberOfRoles()) {
+                throw new IllegalArgumentException("Missing threads for roles! #Threads (" + threadCount + ") >= " +
+                    "sum of times() (" + blockSelection.numberOfRoles() + ")");
+            }
         }
-        return callableList;
     }
 
-    abstract BlockResult<R> doExecuteBlock(
-        CountDownLatch startedSignal,
-        CountDownLatch doneSignal,
-        T initialValue
-    ) throws InterruptedException;
-
-
     void checkMandatoryFields() {
         if (!supplier.isPresent()) {
             throw new IllegalArgumentException("Missing supplier! Do not call with given() with null.");
         }
-    }
-
-    private interface Block {
-        void apply(ExecutorService executorService, int num) throws Throwable;
-    }
-
-    private static void repeat(int numRepeats, ExecutorService es, Block block) throws Throwable {
-        for (int i=0; i < numRepeats; i++) {
-            block.apply(es, i);
+        scalabilityExpectations.checkThreadCounts(sweepThreadCounts.orElse(new int[]{numThreads}));
+        if (!blockTimes.isEmpty() && !blockWeights.isEmpty()) {
+            throw new IllegalArgumentException("Roles and weights could not be mixed! Please use either times() or " +
+                "weight().");
+        }
+        if (!blockTimes.isEmpty() && blockTimes.size() != numberOfBlocks()) {
+            throw new IllegalArgumentException("Missing role! Please apply times() to all blocks.");
+        }
+        checkThreadsForRoles(blockSelection());
+        if (sweepThreadCounts.isPresent() && comparedPerturbations.isPresent()) {
+            throw new IllegalArgumentException("Sweep and perturbation comparison could not be combined! Please use " +
+                "either sweepThreads() or comparePerturbations().");
+        }
+        if (maxContextSwitches.isPresent() && (sweepThreadCounts.isPresent() || comparedPerturbations.isPresent())) {
+            throw new IllegalArgumentException("Interleaving exploration could not be combined with a sweep or a " +
+                "perturbation comparison! Please use either exploreInterleavings() or sweepThreads() / " +
+                "comparePerturbations().");
+        }
+        if (maxContextSwitches.isPresent() && virtualThreads) {
+            throw new IllegalArgumentException("Interleaving exploration is not supported for virtual threads! " +
+                "Please use either onVirtualThreads() or exploreInterleavings().");
+        }
+        if (virtualThreads && profileContention) {
+            throw new IllegalArgumentException("Contention profiling is not supported for virtual threads! Please " +
+                "use either onVirtualThreads() or profileContention().");
+        }
+        if (virtualThreads && measureResources) {
+            throw new IllegalArgumentException("Resource measuring is not supported for virtual threads! Please " +
+                "use either onVirtualThreads() or measureResources().");
+        }
+        if (virtualThreads && engine.isPresent()) {
+            throw new IllegalArgumentException("Virtual threads could not be used with a verification engine! " +
+                "Please use either onVirtualThreads() or using().");
         }
     }
 }
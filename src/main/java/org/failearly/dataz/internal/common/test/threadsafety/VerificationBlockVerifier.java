@@ -13,8 +13,6 @@
 package org.failearly.dataz.internal.common.test.threadsafety;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 import static org.failearly.dataz.internal.common.test.threadsafety.BlockResult.*;
@@ -69,34 +67,35 @@ public final class VerificationBlockVerifier<T> extends ThreadSafetyVerifier<T,
 
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Override
-    protected BlockResult<Void> doExecuteBlock(
-        CountDownLatch startedSignal,
-        CountDownLatch doneSignal,
-        T initialValue
-    ) throws InterruptedException {
-        final int idx=nextRandomIdx(verificationBlocks.size());
-        startedSignal.countDown();
-        LOGGER.debug("Thread {} has been started.", Thread.currentThread().getName());
-        startedSignal.await();
+    int numberOfBlocks() {
+        return verificationBlocks.size();
+    }
+
+    @Override
+    ResultSlots<Void> newResultSlots(
+        int numThreads,
+        int operationsPerThread,
+        Optional<OutcomeHistogram<Void>> outcomes
+    ) {
+        return ResultSlots.withoutValues(numThreads, operationsPerThread);
+    }
+
+    @Override
+    protected boolean doExecuteBlock(int blockIdx, T sharedInstance, ResultSlots<Void> results, int slot) {
         try {
-            verificationBlocks.get(idx).apply(initialValue);
-            return ok();
+            verificationBlocks.get(blockIdx).apply(sharedInstance);
+            return true;
         } catch (AssertionError ae) {
-            LOGGER.debug("Assertion error caught.", ae);
-            return caughtAssertion(ae);
+            results.recordFailure(slot, caughtAssertion(ae));
         } catch (Throwable ex) {
-            LOGGER.debug("Unexpected exception caught.", ex);
-            return caughtUnexpectedException(ex);
-        } finally {
-            doneSignal.countDown();
-            LOGGER.debug("Thread {} has been done.", Thread.currentThread().getName());
+            results.recordFailure(slot, caughtUnexpectedException(ex));
         }
+        return false;
     }
 
     @Override
-    protected void doVerifyResults(List<Future<BlockResult<Void>>> results) {
+    protected void doVerifyResults(ResultSlots<Void> results) {
         // do nothing.
     }
 }
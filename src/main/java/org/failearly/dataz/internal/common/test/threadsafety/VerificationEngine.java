@@ -0,0 +1,222 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * VerificationEngine is a long-lived, pre-warmed thread pool, which could be shared across
+ * {@link ThreadSafetyVerifier} instances (see {@link ThreadSafetyVerifier#using(VerificationEngine)}).
+ * <br><br>
+ * The threads are parked between the {@link ThreadSafetyVerifier#verify()} calls, so the thread creation and the
+ * shutdown of the thread pool will be paid only once. The engine grows on demand, if the verifiers (running
+ * concurrently) need more threads, and shrinks back to it's initial threads, as soon as the additional threads are no
+ * longer reserved. Stuck (abandoned) threads will be replaced, until they have been terminated. It's threads will be
+ * released at JVM shutdown.
+ * <br><br>
+ * Example:
+ * <pre>
+ *     ThreadSafetyVerifier.given(...)
+ *          .whenAndThen(...)
+ *          .onSharedEngine()
+ *          .verify();
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class VerificationEngine implements AutoCloseable {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS=10L;
+
+    private final ThreadPoolExecutor executorService;
+    private final Thread shutdownHook;
+    private final int initialThreads;
+    private final boolean shared;
+    private int reservedThreads=0;
+    private int abandonedThreads=0;
+
+    private VerificationEngine(String name, int initialThreads, boolean shared) {
+        this.initialThreads=initialThreads;
+        this.shared=shared;
+        this.executorService=new ThreadPoolExecutor(
+            initialThreads,
+            initialThreads,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadSafetyVerifier.TSVThreadFactory(name)
+        );
+        this.executorService.prestartAllCoreThreads();
+        this.shutdownHook=new Thread(this::shutdown, name + "-shutdown");
+    }
+
+    /**
+     * The shared engine, which will be created on first usage with {@link Runtime#availableProcessors()} threads. It
+     * will be closed at JVM shutdown only ({@link #close()} does nothing).
+     *
+     * @return the shared verification engine.
+     */
+    public static VerificationEngine shared() {
+        return SharedEngineHolder.SHARED_ENGINE;
+    }
+
+    /**
+     * Creates a new (pre-started) verification engine. The engine will be closed at JVM shutdown, or by
+     * {@link #close()}.
+     *
+     * @param initialThreads the number of threads to be started immediately.
+     *
+     * @return a new verification engine.
+     */
+    public static VerificationEngine create(int initialThreads) {
+        return create("VerificationEngine", initialThreads, false);
+    }
+
+    private static VerificationEngine create(String name, int initialThreads, boolean shared) {
+        if (initialThreads < 1) {
+            throw new IllegalArgumentException("#Threads >= 1");
+        }
+
+        final VerificationEngine engine=new VerificationEngine(name, initialThreads, shared);
+        Runtime.getRuntime().addShutdownHook(engine.shutdownHook);
+        return engine;
+    }
+
+    /**
+     * @return the number of threads, currently available (started or not).
+     */
+    public synchronized int capacity() {
+        return executorService.getCorePoolSize();
+    }
+
+    /**
+     * Reserves {@code numThreads} threads for one {@link ThreadSafetyVerifier#verify()}. If necessary, the engine
+     * will be resized.
+     *
+     * @param numThreads the number of threads.
+     *
+     * @return the executor service.
+     */
+    synchronized ExecutorService reserve(int numThreads) {
+        if (executorService.isShutdown()) {
+            throw new IllegalStateException("Verification engine has already been closed!");
+        }
+
+        this.reservedThreads+=numThreads;
+        if (poolSize() > executorService.getCorePoolSize()) {
+            LOGGER.info("Resize verification engine from {} to {} threads.", executorService.getCorePoolSize(), poolSize());
+            resize(poolSize());
+        }
+        return executorService;
+    }
+
+    /**
+     * Releases the reserved threads. The initial threads will be kept (parked) for next {@link #reserve(int)}, the
+     * additional threads (if no longer reserved) will be terminated.
+     *
+     * @param numThreads       the number of threads.
+     * @param abandonedThreads the terminations of the threads, which are stuck (i.e. deadlocked) and will be replaced
+     *                         until they have been terminated.
+     */
+    synchronized void release(int numThreads, List<CompletableFuture<Void>> abandonedThreads) {
+        this.reservedThreads-=numThreads;
+        if (executorService.isShutdown()) {
+            return;
+        }
+        if (!abandonedThreads.isEmpty()) {
+            LOGGER.warn("Replace {} abandoned thread(s) of verification engine.", abandonedThreads.size());
+            this.abandonedThreads+=abandonedThreads.size();
+            for (CompletableFuture<Void> abandonedThread : abandonedThreads) {
+                abandonedThread.whenComplete((ignored, ex) -> onAbandonedThreadTerminated());
+            }
+        }
+        if (poolSize() != executorService.getCorePoolSize()) {
+            resize(poolSize());
+        }
+    }
+
+    private synchronized void onAbandonedThreadTerminated() {
+        this.abandonedThreads--;
+        if (!executorService.isShutdown() && poolSize() != executorService.getCorePoolSize()) {
+            LOGGER.info("Abandoned thread of verification engine has been terminated.");
+            resize(poolSize());
+        }
+    }
+
+    /**
+     * The abandoned threads are still part of the pool (until they have been terminated), so they are added to the
+     * needed threads.
+     */
+    private int poolSize() {
+        return Math.max(initialThreads, reservedThreads) + abandonedThreads;
+    }
+
+    private void resize(int poolSize) {
+        if (poolSize > executorService.getMaximumPoolSize()) {
+            executorService.setMaximumPoolSize(poolSize);
+            executorService.setCorePoolSize(poolSize);
+            executorService.prestartAllCoreThreads();
+        } else {
+            executorService.setCorePoolSize(poolSize);
+            executorService.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    /**
+     * Shutdown all threads of the engine and removes the shutdown hook. Does nothing for the {@link #shared()}
+     * engine, which is used by all verifiers until JVM shutdown.
+     */
+    @Override
+    public void close() {
+        if (shared) {
+            LOGGER.debug("The shared verification engine will be closed at JVM shutdown.");
+            return;
+        }
+        if (executorService.isShutdown()) {
+            return;
+        }
+        removeShutdownHook();
+        shutdown();
+    }
+
+    private void shutdown() {
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.error("Verification engine TIMEOUT!");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void removeShutdownHook() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // JVM shutdown is already in progress.
+        }
+    }
+
+    private static final class SharedEngineHolder {
+        private static final VerificationEngine SHARED_ENGINE=create(
+            "SharedVerificationEngine",
+            Runtime.getRuntime().availableProcessors(),
+            true
+        );
+    }
+}
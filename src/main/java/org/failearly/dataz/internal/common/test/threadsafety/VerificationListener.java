@@ -0,0 +1,110 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+/**
+ * VerificationListener is the listener SPI of {@link ThreadSafetyVerifier} (see
+ * {@link ThreadSafetyVerifier#listener(VerificationListener)}). All methods have an empty default implementation.
+ * <br><br>
+ * The run and iteration callbacks are called by the coordinator thread. The block callbacks are called by the worker
+ * threads (concurrently!) on the measured path, so they must be thread safe and cheap. They are only called, if
+ * {@link #isBlockListener()} returns {@code true}, otherwise the workers do not call the listener at all.
+ * <br><br>
+ * A run is the execution of all iterations with one configuration (a sweep or perturbation comparison consists of
+ * several runs).
+ *
+ * @see CountingListener
+ */
+@SuppressWarnings("unused")
+public interface VerificationListener {
+    /**
+     * The listener, which does nothing (the default).
+     */
+    VerificationListener NO_OP=new VerificationListener() {
+    };
+
+    /**
+     * @return {@code true} if the block callbacks should be called.
+     */
+    default boolean isBlockListener() {
+        return false;
+    }
+
+    /**
+     * A run starts.
+     *
+     * @param name                the name of the verifier (see {@link ThreadSafetyVerifier#named(String)}).
+     * @param numThreads          the number of threads.
+     * @param operationsPerThread the number of operations per thread and iteration.
+     */
+    default void onRunStart(String name, int numThreads, int operationsPerThread) {
+    }
+
+    /**
+     * A run ends (successful or not).
+     *
+     * @param name        the name of the verifier.
+     * @param iterations  the number of executed iterations.
+     * @param elapsedNanos the elapsed time of all iterations.
+     */
+    default void onRunEnd(String name, int iterations, long elapsedNanos) {
+    }
+
+    /**
+     * An iteration starts (before the workers are released).
+     *
+     * @param iteration the iteration number (starting with 0).
+     */
+    default void onIterationStart(int iteration) {
+    }
+
+    /**
+     * All workers of an iteration are done (before the results have been verified).
+     *
+     * @param iteration      the iteration number (starting with 0).
+     * @param startSkewNanos the start skew in nanoseconds.
+     * @param operations     the number of executed operations.
+     * @param executionNanos the time between the first released and the last finished worker.
+     */
+    default void onIterationEnd(int iteration, long startSkewNanos, long operations, long executionNanos) {
+    }
+
+    /**
+     * The verification of an iteration failed.
+     *
+     * @param iteration the iteration number (starting with 0).
+     * @param failure   the failure.
+     */
+    default void onFailure(int iteration, AssertionError failure) {
+    }
+
+    /**
+     * A worker starts a block (only if {@link #isBlockListener()}).
+     *
+     * @param worker   the worker (thread) index.
+     * @param blockIdx the block index (in order of declaration).
+     */
+    default void onBlockStart(int worker, int blockIdx) {
+    }
+
+    /**
+     * A worker has executed a block (only if {@link #isBlockListener()}).
+     *
+     * @param worker   the worker (thread) index.
+     * @param blockIdx the block index (in order of declaration).
+     * @param nanos    the execution time of the block.
+     * @param ok       {@code false} if the block caught an assertion error or an unexpected exception.
+     */
+    default void onBlockEnd(int worker, int blockIdx, long nanos, boolean ok) {
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.LongSummaryStatistics;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * VerificationReport is the result of a successful {@link ThreadSafetyVerifier#verify()}.
+ * <br><br>
+ * The start skew of an iteration is the time (in nanoseconds) between the first and the last thread released by the
+ * start barrier. If the start skew is larger than the execution time of the blocks, the threads did not overlap
+ * and the iteration did not test anything.
+ * <br><br>
+ * The throughput of an iteration is the number of completed operations divided by the time between the first
+ * released thread and the last finished thread.
+ * <br><br>
+ * The start skews and the throughput are kept per iteration for the first {@value #MAX_RECORDED_ITERATIONS} iterations
+ * and as statistics (min, max, average) of all iterations, so the report does not grow with the number of iterations.
+ * The iteration with the largest start skew is kept for all iterations.
+ * <br><br>
+ * An iteration is effective, if all threads overlapped (the last thread has been released before the first thread
+ * finished) and all operations have been executed. The confidence to detect a race depends on the number of effective
+ * iterations (see {@link #getConfidence(double)}).
+ * <br><br>
+ * The detection rate is the number of failed iterations per second (only a sweep or a perturbation comparison
+ * continues after a failed iteration).
+ */
+@SuppressWarnings("WeakerAccess")
+public final class VerificationReport {
+    /**
+     * The maximum number of iterations, whose start skew and throughput are kept per iteration.
+     */
+    public static final int MAX_RECORDED_ITERATIONS=10_000;
+
+    private final int numThreads;
+    private final int operationsPerThread;
+    private final int iterations;
+    private final long[] startSkewNanos;
+    private final double[] operationsPerSecond;
+    private final LongSummaryStatistics startSkewStatistics;
+    private final DoubleSummaryStatistics operationsPerSecondStatistics;
+    private final int maxStartSkewIteration;
+    private final int pinningEvents;
+    private final long seed;
+    private final long operations;
+    private final long elapsedNanos;
+    private final LatencyHistogram latency;
+    private final int failedIterations;
+    private final AssertionError firstFailure;
+    private final ScalingCurve scalingCurve;
+    private final OutcomeHistogram<?> outcomes;
+    private final long effectiveIterations;
+    private final DetectionTarget detectionTarget;
+    private final Perturbation perturbation;
+    private final PerturbationComparison perturbationComparison;
+    private final ContentionProfile contention;
+    private final ResourceUsage resourceUsage;
+
+    private VerificationReport(
+        VerificationReport report,
+        ScalingCurve scalingCurve,
+        PerturbationComparison perturbationComparison
+    ) {
+        this.numThreads=report.numThreads;
+        this.operationsPerThread=report.operationsPerThread;
+        this.iterations=report.iterations;
+        this.startSkewNanos=report.startSkewNanos;
+        this.operationsPerSecond=report.operationsPerSecond;
+        this.startSkewStatistics=report.startSkewStatistics;
+        this.operationsPerSecondStatistics=report.operationsPerSecondStatistics;
+        this.maxStartSkewIteration=report.maxStartSkewIteration;
+        this.pinningEvents=report.pinningEvents;
+        this.seed=report.seed;
+        this.operations=report.operations;
+        this.elapsedNanos=report.elapsedNanos;
+        this.latency=report.latency;
+        this.failedIterations=report.failedIterations;
+        this.firstFailure=report.firstFailure;
+        this.scalingCurve=scalingCurve;
+        this.outcomes=report.outcomes;
+        this.effectiveIterations=report.effectiveIterations;
+        this.detectionTarget=report.detectionTarget;
+        this.perturbation=report.perturbation;
+        this.perturbationComparison=perturbationComparison;
+        this.contention=report.contention;
+        this.resourceUsage=report.resourceUsage;
+    }
+
+    private VerificationReport(Builder builder) {
+        this.numThreads=builder.numThreads;
+        this.operationsPerThread=builder.operationsPerThread;
+        this.iterations=builder.iterations;
+        this.startSkewNanos=Arrays.copyOf(builder.startSkewNanos, builder.recordedIterations);
+        this.operationsPerSecond=Arrays.copyOf(builder.operationsPerSecond, builder.recordedIterations);
+        this.startSkewStatistics=copy(builder.startSkewStatistics);
+        this.operationsPerSecondStatistics=copy(builder.operationsPerSecondStatistics);
+        this.maxStartSkewIteration=builder.maxStartSkewIteration;
+        this.pinningEvents=builder.pinningEvents;
+        this.seed=builder.seed;
+        this.operations=builder.operations;
+        this.elapsedNanos=builder.elapsedNanos;
+        this.latency=builder.latency;
+        this.failedIterations=builder.failedIterations;
+        this.firstFailure=builder.firstFailure;
+        this.scalingCurve=null;
+        this.outcomes=builder.outcomes;
+        this.effectiveIterations=builder.effectiveIterations;
+        this.detectionTarget=builder.detectionTarget;
+        this.perturbation=builder.perturbation;
+        this.perturbationComparison=null;
+        this.contention=builder.contention;
+        this.resourceUsage=builder.resourceUsage;
+    }
+
+    /**
+     * @param scalingCurve the scaling curve of a sweep
+     *
+     * @return a copy of this report with the scaling curve.
+     */
+    VerificationReport withScalingCurve(ScalingCurve scalingCurve) {
+        return new VerificationReport(this, scalingCurve, perturbationComparison);
+    }
+
+    /**
+     * @param perturbationComparison the comparison of the perturbation strategies
+     *
+     * @return a copy of this report with the perturbation comparison.
+     */
+    VerificationReport withPerturbationComparison(PerturbationComparison perturbationComparison) {
+        return new VerificationReport(this, scalingCurve, perturbationComparison);
+    }
+
+    /**
+     * @return the seed used for the block choices (see {@link ThreadSafetyVerifier#seed(long)}).
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of threads.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @return the number of operations per thread and iteration.
+     */
+    public int getOperationsPerThread() {
+        return operationsPerThread;
+    }
+
+    /**
+     * @return the number of executed iterations.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of effective iterations (all threads overlapped and all operations executed).
+     */
+    public long getEffectiveIterations() {
+        return effectiveIterations;
+    }
+
+    /**
+     * @param probability the probability of a race per iteration ({@code 0 < probability < 1})
+     *
+     * @return the confidence, that a race with the given probability has been detected by the effective iterations.
+     */
+    public double getConfidence(double probability) {
+        if (!(probability > 0.0 && probability < 1.0)) {
+            throw new IllegalArgumentException("0 < probability < 1");
+        }
+        return DetectionTarget.confidence(probability, effectiveIterations);
+    }
+
+    /**
+     * @return the achieved confidence for the probability of {@link ThreadSafetyVerifier#detect(double, double)}
+     * (only with a detection target).
+     */
+    public Optional<Double> getAchievedConfidence() {
+        return Optional.ofNullable(detectionTarget).map(target -> getConfidence(target.getProbability()));
+    }
+
+    /**
+     * @return {@code true} if the detection target of {@link ThreadSafetyVerifier#detect(double, double)} has been
+     * reached (always {@code true} without a detection target).
+     */
+    public boolean isDetectionTargetReached() {
+        return detectionTarget == null || effectiveIterations >= detectionTarget.getRequiredEffectiveIterations();
+    }
+
+    /**
+     * @return the total number of completed operations (blocks).
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the elapsed (wall-clock) time of all iterations.
+     */
+    public Duration getElapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    /**
+     * @param iteration the iteration number (starting with 0, less than {@value #MAX_RECORDED_ITERATIONS})
+     *
+     * @return the start skew of the iteration in nanoseconds.
+     */
+    public long getStartSkewNanos(int iteration) {
+        return startSkewNanos[iteration];
+    }
+
+    /**
+     * @return the start skews of the first (at most {@value #MAX_RECORDED_ITERATIONS}) iterations in nanoseconds.
+     */
+    public long[] getStartSkewNanos() {
+        return startSkewNanos.clone();
+    }
+
+    /**
+     * @return the number of the iteration with the largest start skew (empty without iterations).
+     */
+    public OptionalInt getMaxStartSkewIteration() {
+        return maxStartSkewIteration < 0 ? OptionalInt.empty() : OptionalInt.of(maxStartSkewIteration);
+    }
+
+    /**
+     * @return statistics (min, max, average) of the start skews of all iterations in nanoseconds (empty without
+     * iterations).
+     */
+    public Optional<LongSummaryStatistics> getStartSkewStatistics() {
+        return startSkewStatistics.getCount() == 0 ? Optional.empty() : Optional.of(copy(startSkewStatistics));
+    }
+
+    /**
+     * @param iteration the iteration number (starting with 0, less than {@value #MAX_RECORDED_ITERATIONS})
+     *
+     * @return the throughput of the iteration (operations per second).
+     */
+    public double getOperationsPerSecond(int iteration) {
+        return operationsPerSecond[iteration];
+    }
+
+    /**
+     * @return the throughput of the first (at most {@value #MAX_RECORDED_ITERATIONS}) iterations (operations per
+     * second).
+     */
+    public double[] getOperationsPerSecond() {
+        return operationsPerSecond.clone();
+    }
+
+    /**
+     * @return statistics (min, max, average) of the throughput (operations per second) of all iterations (empty
+     * without iterations).
+     */
+    public Optional<DoubleSummaryStatistics> getOperationsPerSecondStatistics() {
+        return operationsPerSecondStatistics.getCount() == 0
+            ? Optional.empty()
+            : Optional.of(copy(operationsPerSecondStatistics));
+    }
+
+    /**
+     * @return the average throughput (operations per second) of all iterations ({@code 0} without iterations).
+     */
+    double getAverageOperationsPerSecond() {
+        return operationsPerSecondStatistics.getAverage();
+    }
+
+    private static LongSummaryStatistics copy(LongSummaryStatistics statistics) {
+        final LongSummaryStatistics copy=new LongSummaryStatistics();
+        copy.combine(statistics);
+        return copy;
+    }
+
+    private static DoubleSummaryStatistics copy(DoubleSummaryStatistics statistics) {
+        final DoubleSummaryStatistics copy=new DoubleSummaryStatistics();
+        copy.combine(statistics);
+        return copy;
+    }
+
+    /**
+     * @return the latency histogram of all executed blocks (only with {@link ThreadSafetyVerifier#measure()}).
+     */
+    public Optional<LatencyHistogram> getLatency() {
+        return Optional.ofNullable(latency).map(LatencyHistogram::copy);
+    }
+
+    /**
+     * @return the number of failed iterations (only a sweep continues after a failed iteration, see
+     * {@link ThreadSafetyVerifier#sweepThreads(int...)}).
+     */
+    public int getFailedIterations() {
+        return failedIterations;
+    }
+
+    /**
+     * @return the ratio of failed iterations to all iterations.
+     */
+    public double getFailureRate() {
+        return getIterations() == 0 ? 0.0 : (double) failedIterations / getIterations();
+    }
+
+    /**
+     * @return the number of failed iterations per second.
+     */
+    public double getDetectionsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : failedIterations * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the perturbation strategy (see {@link ThreadSafetyVerifier#perturb(Perturbation)}).
+     */
+    public Perturbation getPerturbation() {
+        return perturbation;
+    }
+
+    /**
+     * @return the perturbation comparison (only with {@link ThreadSafetyVerifier#comparePerturbations(Perturbation...)}).
+     */
+    public Optional<PerturbationComparison> getPerturbationComparison() {
+        return Optional.ofNullable(perturbationComparison);
+    }
+
+    /**
+     * @return the allocated bytes and CPU time per operation (only with
+     * {@link ThreadSafetyVerifier#measureResources()}).
+     */
+    public Optional<ResourceUsage> getResourceUsage() {
+        return Optional.ofNullable(resourceUsage).map(ResourceUsage::copy);
+    }
+
+    /**
+     * @return the contention profile (only with {@link ThreadSafetyVerifier#profileContention()}).
+     */
+    public Optional<ContentionProfile> getContention() {
+        return Optional.ofNullable(contention);
+    }
+
+    /**
+     * @return the first failure (if any).
+     */
+    Optional<AssertionError> getFirstFailure() {
+        return Optional.ofNullable(firstFailure);
+    }
+
+    /**
+     * @return the outcome histogram across all iterations (only with
+     * {@link ExecutionBlockVerifier#expectOutcome(Expect, Object[])}).
+     */
+    public Optional<OutcomeHistogram<?>> getOutcomes() {
+        return Optional.ofNullable(outcomes).map(OutcomeHistogram::copy);
+    }
+
+    /**
+     * @return the scaling curve (only with {@link ThreadSafetyVerifier#sweepThreads(int...)}).
+     */
+    public Optional<ScalingCurve> getScalingCurve() {
+        return Optional.ofNullable(scalingCurve);
+    }
+
+    /**
+     * @return the number of pinning events of virtual threads (only with
+     * {@link ThreadSafetyVerifier#onVirtualThreads()}).
+     */
+    public int getPinningEvents() {
+        return pinningEvents;
+    }
+
+    @Override
+    public String toString() {
+        return "VerificationReport{" +
+            "seed=" + seed +
+            ", numThreads=" + numThreads +
+            ", iterations=" + getIterations() +
+            ", effectiveIterations=" + effectiveIterations +
+            (detectionTarget != null ? ", achievedConfidence=" + getConfidence(detectionTarget.getProbability()) : "") +
+            ", failedIterations=" + failedIterations +
+            ", operations=" + operations +
+            ", elapsed=" + getElapsed() +
+            (perturbation.isNone() ? "" : ", perturbation=" + perturbation) +
+            (maxStartSkewIteration < 0 ? "" :
+                ", startSkewNanos(min/avg/max)=" + startSkewStatistics.getMin() + "/" +
+                    (long) startSkewStatistics.getAverage() + "/" + startSkewStatistics.getMax() +
+                    " (max in iteration no " + maxStartSkewIteration + ")" +
+                    ", operationsPerSecond(avg)=" + (long) operationsPerSecondStatistics.getAverage()) +
+            (latency != null ? ", latency=" + latency : "") +
+            (resourceUsage != null ? ", resourceUsage=" + resourceUsage : "") +
+            ", pinningEvents=" + pinningEvents +
+            '}' +
+            (outcomes != null ? "\n" + outcomes.toTable() : "") +
+            (contention != null ? "\n" + contention.toTable() : "");
+    }
+
+    /**
+     * Builder is used by {@link ThreadSafetyVerifier} while running the iterations.
+     */
+    static final class Builder {
+        private final int numThreads;
+        private final int operationsPerThread;
+        private long[] startSkewNanos=new long[16];
+        private double[] operationsPerSecond=new double[16];
+        private int recordedIterations=0;
+        private final LongSummaryStatistics startSkewStatistics=new LongSummaryStatistics();
+        private final DoubleSummaryStatistics operationsPerSecondStatistics=new DoubleSummaryStatistics();
+        private int maxStartSkewIteration=-1;
+        private LatencyHistogram latency;
+        private OutcomeHistogram<?> outcomes;
+        private ContentionProfile contention;
+        private ResourceUsage resourceUsage;
+        private int failedIterations=0;
+        private AssertionError firstFailure;
+        private int iterations=0;
+        private long effectiveIterations=0;
+        private final DetectionTarget detectionTarget;
+        private final Perturbation perturbation;
+        private int pinningEvents=0;
+        private long seed;
+        private long operations=0;
+        private long elapsedNanos=0;
+
+        Builder(VerificationSettings settings) {
+            this.numThreads=settings.numThreads;
+            this.operationsPerThread=settings.operationsPerThread;
+            this.detectionTarget=settings.detectionTarget;
+            this.perturbation=settings.perturbation;
+        }
+
+        Builder addIteration(long startSkewNanos, long operations, long executionNanos, boolean effective) {
+            this.operations+=operations;
+            if (effective) {
+                this.effectiveIterations++;
+            }
+            final double operationsPerSecond=operations * 1e9 / Math.max(1L, executionNanos);
+            if (maxStartSkewIteration < 0 || startSkewNanos > startSkewStatistics.getMax()) {
+                maxStartSkewIteration=iterations;
+            }
+            this.startSkewStatistics.accept(startSkewNanos);
+            this.operationsPerSecondStatistics.accept(operationsPerSecond);
+            if (recordedIterations < MAX_RECORDED_ITERATIONS) {
+                record(startSkewNanos, operationsPerSecond);
+            }
+            iterations++;
+            return this;
+        }
+
+        private void record(long startSkewNanos, double operationsPerSecond) {
+            if (recordedIterations == this.startSkewNanos.length) {
+                final int capacity=Math.min(MAX_RECORDED_ITERATIONS, recordedIterations * 2);
+                this.startSkewNanos=Arrays.copyOf(this.startSkewNanos, capacity);
+                this.operationsPerSecond=Arrays.copyOf(this.operationsPerSecond, capacity);
+            }
+            this.startSkewNanos[recordedIterations]=startSkewNanos;
+            this.operationsPerSecond[recordedIterations]=operationsPerSecond;
+            recordedIterations++;
+        }
+
+        Builder addFailedIteration(AssertionError failure) {
+            this.failedIterations++;
+            if (this.firstFailure == null) {
+                this.firstFailure=failure;
+            }
+            return this;
+        }
+
+        Builder latency(LatencyHistogram latency) {
+            this.latency=latency;
+            return this;
+        }
+
+        Builder outcomes(OutcomeHistogram<?> outcomes) {
+            this.outcomes=outcomes;
+            return this;
+        }
+
+        Builder resourceUsage(ResourceUsage resourceUsage) {
+            this.resourceUsage=resourceUsage;
+            return this;
+        }
+
+        Builder contention(ContentionProfile contention) {
+            this.contention=contention;
+            return this;
+        }
+
+        Builder elapsedNanos(long elapsedNanos) {
+            this.elapsedNanos=elapsedNanos;
+            return this;
+        }
+
+        Builder seed(long seed) {
+            this.seed=seed;
+            return this;
+        }
+
+        Builder pinningEvents(int pinningEvents) {
+            this.pinningEvents=pinningEvents;
+            return this;
+        }
+
+        VerificationReport build() {
+            return new VerificationReport(this);
+        }
+    }
+}
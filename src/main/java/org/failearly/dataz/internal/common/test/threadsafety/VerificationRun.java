@@ -0,0 +1,740 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.failearly.dataz.internal.common.test.threadsafety.ThreadSafetyVerifier.LOGGER;
+
+/**
+ * VerificationRun is a (internal) class for {@link ThreadSafetyVerifier}. It executes all iterations of one
+ * {@link ThreadSafetyVerifier#verify()}.
+ * <br><br>
+ * The worker threads are started once and reused for all iterations. Each iteration passes three barriers:
+ * <ol>
+ *     <li>the iteration gate: the (calling) coordinator thread has created the shared instance(s),</li>
+ *     <li>the start barrier: all workers are ready to execute their block,</li>
+ *     <li>the done barrier: all workers have executed their block, so the coordinator could verify the results and
+ *     run the arbiter.</li>
+ * </ol>
+ * All barriers are reused across the iterations. The coordinator waits for the done barrier no longer than the
+ * iteration timeout (watchdog), afterwards the stuck workers will be abandoned (interrupted, and their termination
+ * is handed to the {@link VerificationEngine}, see {@link #getAbandonedWorkerTerminations()}). After the start barrier each worker
+ * executes it's operations (randomly chosen blocks or the block of it's role) back to back. The block choices are
+ * made before the start barrier and the results are stored into preallocated slots
+ * ({@code worker * operationsPerThread + operation}, see {@link ResultSlots}), so a successful operation does not
+ * allocate anything.
+ * <br><br>
+ * The shared instances are supplied by an {@link InstancePipeline} (optionally prepared ahead and cleaned up on
+ * background threads). The shared instances of a timed out iteration will not be cleaned up, because the abandoned
+ * workers may still use them.
+ * <br><br>
+ * With striding each iteration has it's own shared instance and result slots per stride. The workers execute their
+ * operations on all instances one after another, without any barrier in between.
+ * <br><br>
+ * The workers could be perturbed (between their operations or before their first operation, see
+ * {@link Perturbation}) and background noise threads run during the whole run (see {@link NoiseThreads}).
+ * <br><br>
+ * Each iteration emits an {@link IterationEvent} (Java Flight Recorder), which will only be created within a running
+ * recording. With {@link ThreadSafetyVerifier#recordBlockEvents()}, each executed block emits a
+ * {@link BlockExecutionEvent}, if this event is recorded.
+ * <br><br>
+ * The {@link VerificationListener} is notified by the coordinator about the run, each iteration and each failure. The
+ * workers only notify it about each block, if it is a block listener (decided once per run). Anything a worker throws
+ * outside of the blocks (i.e. a block listener) fails the iteration, the worker still arrives at the done barrier.
+ * <br><br>
+ * With measuring resources, each worker records the allocated bytes and the CPU time of each block (see
+ * {@link ResourceMeter}).
+ * <br><br>
+ * With contention profiling, each worker records it's blocked and waited counts around it's operations (see
+ * {@link ContentionProfiler}).
+ * <br><br>
+ * With a detection target, the iterations stop as soon as enough effective iterations (all threads overlapped and
+ * all operations executed) have been made (see {@link DetectionTarget}).
+ * <br><br>
+ * While counting failures (i.e. for a sweep), a failed iteration does not stop the run.
+ * <br><br>
+ * With fail fast, the workers skip their remaining operations of the iteration as soon as any block has failed (the
+ * skipped slots have no value).
+ * <br><br>
+ * The block choices are reproducible: The first iteration uses the seed itself, the following iterations use seeds
+ * generated from the seed. Each worker uses it's own random generator split from the iteration's seed, so the
+ * choices do not contend on a shared generator.
+ */
+final class VerificationRun<T, R> {
+    private static final int MAX_BLOCK_CHOICES_SHOWN=100;
+
+    private final ThreadSafetyVerifier<T, R, ?> verifier;
+    private final VerificationSettings settings;
+    private final int numThreads;
+    private final int operationsPerThread;
+    private final int strides;
+    private final int coordinator;
+    private final SpinParkBarrier iterationGate;
+    private final SpinParkBarrier startBarrier;
+    private final SpinParkBarrier doneBarrier;
+    private final ResultSlots<R>[] results;
+    private final ActorResults<R>[] actorResults;
+    private final Optional<OutcomeHistogram<R>> outcomes;
+    private final Object[] sharedInstances;
+    private final long[] releaseNanos;
+    private final long[] finishNanos;
+    private final LatencyHistogram[] latencyHistograms;
+    private final ResourceMeter[] resourceMeters;
+    private final int[][] blockChoices;
+    private final Throwable[] workerFailures;
+    private final Thread[] workerThreads;
+    private final SplittableRandom[] workerRandoms;
+    private final SplittableRandom seedGenerator;
+    private final VerificationReport.Builder report;
+    private final VerificationListener listener;
+
+    private long iterationSeed;
+    private long effectiveIterations=0;
+    private int executedIterations=0;
+    private int abandonedWorkers=0;
+    private final List<CompletableFuture<Void>> abandonedWorkerTerminations=new ArrayList<>();
+
+    private volatile boolean stopped=false;
+    private volatile boolean failed=false;
+    private InstancePipeline<T> instancePipeline;
+    private NoiseThreads noiseThreads;
+    private ContentionProfiler contentionProfiler;
+
+    VerificationRun(ThreadSafetyVerifier<T, R, ?> verifier, VerificationSettings settings, VerificationReport.Builder report) {
+        this.verifier=verifier;
+        this.settings=settings;
+        this.numThreads=settings.numThreads;
+        this.operationsPerThread=settings.operationsPerThread;
+        this.strides=settings.strides;
+        this.coordinator=numThreads;
+        this.iterationGate=new SpinParkBarrier(numThreads + 1, 0);
+        this.startBarrier=new SpinParkBarrier(numThreads, settings.spins);
+        this.doneBarrier=new SpinParkBarrier(numThreads + 1, 0);
+        this.releaseNanos=new long[numThreads];
+        this.finishNanos=new long[numThreads];
+        this.latencyHistograms=new LatencyHistogram[numThreads];
+        this.resourceMeters=new ResourceMeter[numThreads];
+        this.blockChoices=new int[numThreads][operationsPerThread];
+        this.workerFailures=new Throwable[numThreads];
+        this.outcomes=verifier.newOutcomeHistogram();
+        this.sharedInstances=new Object[strides];
+        this.results=newResultSlots(strides);
+        this.actorResults=newActorResults(strides);
+        for (int stride=0; stride < strides; stride++) {
+            results[stride]=verifier.newResultSlots(numThreads, operationsPerThread, outcomes);
+            actorResults[stride]=new ActorResults<>(results[stride], blockChoices);
+        }
+        this.workerThreads=new Thread[numThreads];
+        this.workerRandoms=new SplittableRandom[numThreads];
+        this.seedGenerator=new SplittableRandom(settings.seed);
+        this.iterationSeed=settings.seed;
+        this.report=report.seed(settings.seed);
+        this.listener=settings.listener;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> ResultSlots<R>[] newResultSlots(int strides) {
+        return (ResultSlots<R>[]) new ResultSlots<?>[strides];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> ActorResults<R>[] newActorResults(int strides) {
+        return (ActorResults<R>[]) new ActorResults<?>[strides];
+    }
+
+    /**
+     * Executes all iterations (either the number of repetitions or until the time budget has been used up).
+     *
+     * @param executorService the executor service (must provide {@code numThreads} threads).
+     *
+     * @throws Throwable any assertion error or exception
+     */
+    void execute(ExecutorService executorService) throws Throwable {
+        instancePipeline=verifier.newInstancePipeline(settings.prepareAhead);
+        noiseThreads=verifier.newNoiseThreads(settings.noise, settings.noiseThreads);
+        contentionProfiler=settings.profileContention ? verifier.newContentionProfiler(numThreads) : null;
+        final List<Worker> workers=new ArrayList<>(numThreads);
+        final List<Future<?>> workerFutures=startWorkers(executorService, workers);
+        listener.onRunStart(verifier.getName(), numThreads, operationsPerThread);
+        final long startNanos=System.nanoTime();
+        try {
+            for (int i=0; hasNextIteration(i, startNanos); i++) {
+                doIteration(i);
+            }
+            warnOnMissedDetectionTarget();
+            mergeLatencyHistograms();
+            mergeResourceUsages();
+            outcomes.ifPresent(report::outcomes);
+        } finally {
+            final long elapsedNanos=System.nanoTime() - startNanos;
+            report.elapsedNanos(elapsedNanos);
+            listener.onRunEnd(verifier.getName(), executedIterations, elapsedNanos);
+            if (abandonedWorkers > 0) {
+                abandonWorkers(workers, workerFutures);
+            } else {
+                stopWorkers(workerFutures);
+            }
+            noiseThreads.awaitClosed();
+            instancePipeline.awaitClosed();
+            closeResourceMeters();
+            closeContentionProfiler();
+        }
+    }
+
+    /**
+     * @return the number of stuck workers, which have been abandoned after the watchdog's timeout.
+     */
+    int getAbandonedWorkers() {
+        return abandonedWorkers;
+    }
+
+    /**
+     * @return the terminations of the abandoned workers, which were still running after they have been interrupted.
+     */
+    List<CompletableFuture<Void>> getAbandonedWorkerTerminations() {
+        return abandonedWorkerTerminations;
+    }
+
+    /**
+     * The iterations are counted by {@code int}, so a run stops after {@link Integer#MAX_VALUE} iterations (even if
+     * the time budget has not been used up).
+     */
+    private boolean hasNextIteration(int num, long startNanos) {
+        if (num == Integer.MAX_VALUE) {
+            return false;
+        }
+        if (settings.isAdaptive()) {
+            final DetectionTarget target=settings.detectionTarget;
+            if (effectiveIterations >= target.getRequiredEffectiveIterations()) {
+                return false;
+            }
+            if (!settings.isTimeBudgeted()) {
+                return num < target.getMaxIterations();
+            }
+        }
+        if (settings.isTimeBudgeted()) {
+            return num == 0 || System.nanoTime() - startNanos < settings.durationNanos;
+        }
+        return num < settings.repeat;
+    }
+
+    private void closeResourceMeters() {
+        for (ResourceMeter resourceMeter : resourceMeters) {
+            if (resourceMeter != null) {
+                resourceMeter.close();
+            }
+        }
+    }
+
+    private void closeContentionProfiler() throws InterruptedException {
+        if (contentionProfiler != null) {
+            contentionProfiler.awaitClosed();
+            report.contention(contentionProfiler.profile());
+        }
+    }
+
+    private void warnOnMissedDetectionTarget() {
+        if (settings.isAdaptive()
+            && effectiveIterations < settings.detectionTarget.getRequiredEffectiveIterations()) {
+            LOGGER.warn("Detection target not reached: {} of {} effective iterations (achieved confidence {}).",
+                effectiveIterations,
+                settings.detectionTarget.getRequiredEffectiveIterations(),
+                DetectionTarget.confidence(settings.detectionTarget.getProbability(), effectiveIterations)
+            );
+        }
+    }
+
+    private List<Future<?>> startWorkers(ExecutorService executorService, List<Worker> workers) {
+        final List<Future<?>> workerFutures=new ArrayList<>(numThreads);
+        for (int i=0; i < numThreads; i++) {
+            final Worker worker=new Worker(i);
+            workers.add(worker);
+            workerFutures.add(executorService.submit(worker));
+        }
+        return workerFutures;
+    }
+
+    private void stopWorkers(List<Future<?>> workers) throws InterruptedException {
+        stopped=true;
+        iterationGate.await(coordinator);
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException ex) {
+                LOGGER.error("Worker failed.", ex.getCause());
+            }
+        }
+    }
+
+    private void mergeLatencyHistograms() {
+        if (settings.measureLatency) {
+            final LatencyHistogram latency=new LatencyHistogram();
+            for (LatencyHistogram histogram : latencyHistograms) {
+                latency.merge(histogram);
+            }
+            report.latency(latency);
+        }
+    }
+
+    private void mergeResourceUsages() {
+        if (settings.measureResources) {
+            ResourceUsage resourceUsage=null;
+            for (ResourceMeter resourceMeter : resourceMeters) {
+                if (resourceMeter == null) {
+                    continue;
+                }
+                resourceUsage=resourceUsage == null
+                    ? resourceMeter.getResourceUsage().copy()
+                    : resourceUsage.merge(resourceMeter.getResourceUsage());
+            }
+            if (resourceUsage != null) {
+                report.resourceUsage(resourceUsage);
+            }
+        }
+    }
+
+    /**
+     * The workers are stopped before they are interrupted, so a worker, which returns from it's (interruptible) block,
+     * terminates instead of waiting for the next iteration. A cancelled future is done immediately, so the (still
+     * running) workers signal their termination by their own.
+     */
+    private void abandonWorkers(List<Worker> workers, List<Future<?>> workerFutures) {
+        stopped=true;
+        for (int i=0; i < numThreads; i++) {
+            workerFutures.get(i).cancel(true);
+            if (!workers.get(i).terminated.isDone()) {
+                abandonedWorkerTerminations.add(workers.get(i).terminated);
+            }
+        }
+    }
+
+    private void doIteration(int num) throws Throwable {
+        executedIterations++;
+        listener.onIterationStart(num);
+        failed=false;
+        for (int stride=0; stride < strides; stride++) {
+            sharedInstances[stride]=instancePipeline.take();
+            results[stride].clearFailures();
+        }
+        splitWorkerRandoms(num);
+        final IterationEvent event=IterationEvent.isRecorded() ? new IterationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        iterationGate.await(coordinator);
+
+        if (!doneBarrier.await(coordinator, settings.iterationTimeoutNanos)) {
+            onIterationTimeout(num);
+        }
+        if (event != null) {
+            event.end();
+        }
+
+        if (contentionProfiler != null) {
+            contentionProfiler.endIteration();
+        }
+        final long startSkewNanos=startSkewNanos();
+        final long executedOperations=executedOperations();
+        final boolean effective=isEffectiveIteration(executedOperations);
+        if (effective) {
+            effectiveIterations++;
+        }
+        final long executionNanos=executionNanos();
+        report.addIteration(startSkewNanos, executedOperations, executionNanos, effective);
+        listener.onIterationEnd(num, startSkewNanos, executedOperations, executionNanos);
+        boolean iterationFailed=false;
+        try {
+            verifyWorkers(num, startSkewNanos);
+            for (int stride=0; stride < strides; stride++) {
+                verifyStride(num, stride, startSkewNanos);
+            }
+        } catch (AssertionError failure) {
+            iterationFailed=true;
+            listener.onFailure(num, failure);
+            if (!settings.countFailures) {
+                throw failure;
+            }
+            report.addFailedIteration(failure);
+        } finally {
+            releaseSharedInstances();
+            commitIterationEvent(event, num, startSkewNanos, executedOperations, effective, iterationFailed);
+        }
+    }
+
+    private void commitIterationEvent(
+        IterationEvent event,
+        int num,
+        long startSkewNanos,
+        long executedOperations,
+        boolean effective,
+        boolean iterationFailed
+    ) {
+        if (event != null && event.shouldCommit()) {
+            event.verifier=verifier.getName();
+            event.iteration=num;
+            event.threads=numThreads;
+            event.operations=executedOperations;
+            event.startSkew=startSkewNanos;
+            event.failedOperations=failedOperations();
+            event.failed=iterationFailed;
+            event.effective=effective;
+            event.blockChoices=describeBlockChoices();
+            event.commit();
+        }
+    }
+
+    private int failedOperations() {
+        int failedOperations=0;
+        for (ResultSlots<R> strideResults : results) {
+            failedOperations+=strideResults.numberOfFailures();
+        }
+        return failedOperations;
+    }
+
+    private String describeBlockChoices() {
+        final StringBuilder stringBuilder=new StringBuilder();
+        for (int i=0; i < numThreads; i++) {
+            if (i > 0) {
+                stringBuilder.append("; ");
+            }
+            stringBuilder.append(i).append(": ");
+            appendBlockChoices(stringBuilder, blockChoices[i]);
+        }
+        return stringBuilder.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void releaseSharedInstances() {
+        for (int stride=0; stride < strides; stride++) {
+            instancePipeline.release((T) sharedInstances[stride]);
+            sharedInstances[stride]=null;
+        }
+    }
+
+    /**
+     * A worker fails only, if something outside of the blocks (i.e. a listener) has thrown an exception.
+     */
+    private void verifyWorkers(int num, long startSkewNanos) {
+        for (int i=0; i < numThreads; i++) {
+            final Throwable failure=workerFailures[i];
+            if (failure != null) {
+                workerFailures[i]=null;
+                throw new AssertionError("\n\nWorker thread " + workerThreads[i].getName() + " caught unexpected " +
+                    "exception outside of the blocks" + describeIteration(num, 0, startSkewNanos), failure);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void verifyStride(int num, int stride, long startSkewNanos) {
+        verifier.doVerifyForAssertionsAndUnexpectedExceptions(
+            results[stride],
+            () -> describeIteration(num, stride, startSkewNanos)
+        );
+        verifier.doVerifyResults(results[stride]);
+        verifier.doArbiter(
+            (T) sharedInstances[stride],
+            actorResults[stride],
+            () -> describeIteration(num, stride, startSkewNanos)
+        );
+    }
+
+    private long executedOperations() {
+        long executed=0;
+        for (ResultSlots<R> strideResults : results) {
+            executed+=strideResults.numberOfExecutedOperations();
+        }
+        return executed;
+    }
+
+    private void onIterationTimeout(int num) {
+        final HangDiagnostics diagnostics=HangDiagnostics.analyse(
+            num,
+            Duration.ofNanos(settings.iterationTimeoutNanos),
+            workerThreads
+        );
+        abandonedWorkers=Math.max(1, diagnostics.getNumberOfStuckWorkers());
+        final AssertionError failure=new AssertionError(diagnostics.getReport());
+        listener.onFailure(num, failure);
+        throw failure;
+    }
+
+    private void splitWorkerRandoms(int num) {
+        if (num > 0) {
+            iterationSeed=seedGenerator.nextLong();
+        }
+        final SplittableRandom iterationRandom=new SplittableRandom(iterationSeed);
+        for (int i=0; i < numThreads; i++) {
+            workerRandoms[i]=iterationRandom.split();
+        }
+    }
+
+    private String describeIteration(int num, int stride, long startSkewNanos) {
+        final StringBuilder stringBuilder=new StringBuilder();
+        stringBuilder.append(" in iteration no ").append(num);
+        if (strides > 1) {
+            stringBuilder.append(" on shared instance no ").append(stride).append(" of ").append(strides);
+        }
+        stringBuilder
+            .append(" (start skew ").append(startSkewNanos).append("ns).");
+        final BlockSelection blockSelection=settings.blockSelection;
+        if (blockSelection.isDeclarable()) {
+            stringBuilder
+                .append("\nReplay the iteration with seed(").append(iterationSeed).append("L)")
+                .append(".threads(").append(numThreads).append(")")
+                .append(".operationsPerThread(").append(operationsPerThread).append(")")
+                .append(strides > 1 ? ".stride(" + strides + ")" : "")
+                .append(".repeat(1)")
+                .append(blockSelection.isUniform() ? "" : " with block " + blockSelection);
+        } else {
+            stringBuilder
+                .append("\nThe iteration could not be replayed by it's seed: the blocks (")
+                .append(blockSelection).append(") contain removed blocks (0).");
+        }
+        stringBuilder.append("\nBlock choices per thread:");
+        for (int i=0; i < numThreads; i++) {
+            stringBuilder.append("\n\t").append(workerThreads[i].getName()).append(": ");
+            appendBlockChoices(stringBuilder, blockChoices[i]);
+        }
+        return stringBuilder.toString();
+    }
+
+    private static void appendBlockChoices(StringBuilder stringBuilder, int[] choices) {
+        final int shown=Math.min(choices.length, MAX_BLOCK_CHOICES_SHOWN);
+        stringBuilder.append('[');
+        for (int op=0; op < shown; op++) {
+            if (op > 0) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(choices[op]);
+        }
+        if (shown < choices.length) {
+            stringBuilder.append(", ... (").append(choices.length - shown).append(" more)");
+        }
+        stringBuilder.append(']');
+    }
+
+    /**
+     * An iteration is effective, if the last thread has been released before the first thread finished (the threads
+     * overlapped) and no operation has been skipped.
+     */
+    private boolean isEffectiveIteration(long executedOperations) {
+        if (executedOperations < (long) numThreads * operationsPerThread * strides) {
+            return false;
+        }
+        if (numThreads == 1) {
+            return true;
+        }
+        long lastRelease=Long.MIN_VALUE;
+        long firstFinish=Long.MAX_VALUE;
+        for (int i=0; i < numThreads; i++) {
+            lastRelease=Math.max(lastRelease, releaseNanos[i]);
+            firstFinish=Math.min(firstFinish, finishNanos[i]);
+        }
+        return lastRelease < firstFinish;
+    }
+
+    private long executionNanos() {
+        long first=Long.MAX_VALUE;
+        long last=Long.MIN_VALUE;
+        for (int i=0; i < numThreads; i++) {
+            first=Math.min(first, releaseNanos[i]);
+            last=Math.max(last, finishNanos[i]);
+        }
+        return last - first;
+    }
+
+    private long startSkewNanos() {
+        long first=Long.MAX_VALUE;
+        long last=Long.MIN_VALUE;
+        for (long release : releaseNanos) {
+            first=Math.min(first, release);
+            last=Math.max(last, release);
+        }
+        return last - first;
+    }
+
+    private final class Worker implements Runnable {
+        private final int idx;
+        private final int firstSlot;
+        private final int[] blockIdxs;
+        private final LatencyHistogram latencyHistogram;
+        private final boolean blockListener;
+        private ResourceMeter resourceMeter;
+        private boolean blockEventsRecorded=false;
+        private final Perturbation perturbation;
+        private final boolean perturbBetweenOperations;
+        private final boolean perturbFirstOperation;
+        private final CompletableFuture<Void> terminated=new CompletableFuture<>();
+
+        private Worker(int idx) {
+            this.idx=idx;
+            this.firstSlot=idx * operationsPerThread;
+            this.blockIdxs=blockChoices[idx];
+            this.latencyHistogram=settings.measureLatency ? new LatencyHistogram() : null;
+            latencyHistograms[idx]=latencyHistogram;
+            this.blockListener=listener.isBlockListener();
+            this.perturbation=settings.perturbation;
+            this.perturbBetweenOperations=!perturbation.isNone() && !perturbation.isAtStart();
+            this.perturbFirstOperation=perturbBetweenOperations && operationsPerThread * strides == 1;
+        }
+
+        @Override
+        public void run() {
+            workerThreads[idx]=Thread.currentThread();
+            if (contentionProfiler != null) {
+                contentionProfiler.register(idx, Thread.currentThread());
+            }
+            if (settings.measureResources) {
+                resourceMeter=new ResourceMeter(numThreads, verifier.numberOfBlocks());
+                resourceMeters[idx]=resourceMeter;
+            }
+            try {
+                while (true) {
+                    iterationGate.await(idx);
+                    if (stopped) {
+                        return;
+                    }
+                    chooseBlocks();
+                    blockEventsRecorded=settings.recordBlockEvents && BlockExecutionEvent.isRecorded();
+                    startBarrier.await(idx);
+                    releaseNanos[idx]=System.nanoTime();
+                    try {
+                        executeIteration();
+                    } catch (Throwable ex) {
+                        workerFailures[idx]=ex;
+                        failed=true;
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    doneBarrier.await(idx);
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.warn("Thread {} has been interrupted.", Thread.currentThread().getName());
+                Thread.currentThread().interrupt();
+            } finally {
+                terminated.complete(null);
+            }
+        }
+
+        /**
+         * Anything thrown (i.e. by a listener) will be reported by the coordinator after the done barrier.
+         */
+        private void executeIteration() {
+            perturbAtStart();
+            if (contentionProfiler != null) {
+                contentionProfiler.beforeExecution(idx);
+            }
+            try {
+                executeStrides();
+            } finally {
+                finishNanos[idx]=System.nanoTime();
+                if (contentionProfiler != null) {
+                    contentionProfiler.afterExecution(idx);
+                }
+            }
+        }
+
+        private void chooseBlocks() {
+            final BlockSelection blockSelection=settings.blockSelection;
+            final SplittableRandom random=workerRandoms[idx];
+            for (int op=0; op < operationsPerThread; op++) {
+                blockIdxs[op]=blockSelection.choose(idx, random);
+            }
+        }
+
+        private void perturbAtStart() {
+            if (perturbation.isAtStart()) {
+                perturbation.apply(workerRandoms[idx]);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void executeStrides() {
+            for (int stride=0; stride < strides; stride++) {
+                executeBlocks(stride, (T) sharedInstances[stride], results[stride]);
+            }
+        }
+
+        /**
+         * The perturbation is applied before each operation of the iteration (across all strides) except the first
+         * one, unless the first is the only operation.
+         */
+        private void executeBlocks(int stride, T instance, ResultSlots<R> slots) {
+            int op=0;
+            for (; op < operationsPerThread; op++) {
+                if (settings.failFast && failed) {
+                    break;
+                }
+                if (perturbBetweenOperations && (op > 0 || stride > 0 || perturbFirstOperation)) {
+                    perturbation.apply(workerRandoms[idx]);
+                }
+                final boolean ok=blockEventsRecorded
+                    ? executeBlockWithEvent(op, instance, slots)
+                    : executeBlock(blockIdxs[op], instance, slots, firstSlot + op);
+                if (settings.failFast && !ok) {
+                    failed=true;
+                }
+            }
+            slots.recordExecuted(idx, op);
+        }
+
+        private boolean executeBlockWithEvent(int op, T instance, ResultSlots<R> slots) {
+            final BlockExecutionEvent event=new BlockExecutionEvent();
+            event.begin();
+            final boolean ok=executeBlock(blockIdxs[op], instance, slots, firstSlot + op);
+            event.end();
+            event.worker=idx;
+            event.operation=op;
+            event.block=blockIdxs[op];
+            event.failed=!ok;
+            event.commit();
+            return ok;
+        }
+
+        private boolean executeBlock(int blockIdx, T instance, ResultSlots<R> slots, int slot) {
+            if (latencyHistogram == null && resourceMeter == null && !blockListener) {
+                return verifier.doExecuteBlock(blockIdx, instance, slots, slot);
+            }
+            if (blockListener) {
+                listener.onBlockStart(idx, blockIdx);
+            }
+            if (resourceMeter != null) {
+                resourceMeter.start();
+            }
+            final long startNanos=System.nanoTime();
+            final boolean ok=verifier.doExecuteBlock(blockIdx, instance, slots, slot);
+            final long endNanos=System.nanoTime();
+            if (resourceMeter != null) {
+                resourceMeter.stop(blockIdx);
+            }
+            if (latencyHistogram != null) {
+                latencyHistogram.record(endNanos - startNanos);
+            }
+            if (blockListener) {
+                listener.onBlockEnd(idx, blockIdx, endNanos - startNanos, ok);
+            }
+            return ok;
+        }
+    }
+}
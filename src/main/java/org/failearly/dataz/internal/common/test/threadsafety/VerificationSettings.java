@@ -0,0 +1,101 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+/**
+ * VerificationSettings is a (internal) class for {@link ThreadSafetyVerifier}. It's the (immutable) snapshot of the
+ * settings of a verifier, used by one {@link VerificationRun}.
+ */
+final class VerificationSettings {
+    final int numThreads;
+    final int operationsPerThread;
+    final int strides;
+    final int prepareAhead;
+    final int spins;
+    final long seed;
+    final boolean failFast;
+    final int repeat;
+    final long durationNanos;
+    final long iterationTimeoutNanos;
+    final boolean measureLatency;
+    final boolean countFailures;
+    final BlockSelection blockSelection;
+    final DetectionTarget detectionTarget;
+    final Perturbation perturbation;
+    final Noise noise;
+    final int noiseThreads;
+    final boolean profileContention;
+    final boolean measureResources;
+    final boolean recordBlockEvents;
+    final VerificationListener listener;
+
+    VerificationSettings(
+        int numThreads,
+        int operationsPerThread,
+        int strides,
+        int prepareAhead,
+        int spins,
+        long seed,
+        boolean failFast,
+        int repeat,
+        long durationNanos,
+        long iterationTimeoutNanos,
+        boolean measureLatency,
+        boolean countFailures,
+        BlockSelection blockSelection,
+        DetectionTarget detectionTarget,
+        Perturbation perturbation,
+        Noise noise,
+        int noiseThreads,
+        boolean profileContention,
+        boolean measureResources,
+        boolean recordBlockEvents,
+        VerificationListener listener
+    ) {
+        this.numThreads=numThreads;
+        this.operationsPerThread=operationsPerThread;
+        this.strides=strides;
+        this.prepareAhead=prepareAhead;
+        this.spins=spins;
+        this.seed=seed;
+        this.failFast=failFast;
+        this.repeat=repeat;
+        this.durationNanos=durationNanos;
+        this.iterationTimeoutNanos=iterationTimeoutNanos;
+        this.measureLatency=measureLatency;
+        this.countFailures=countFailures;
+        this.blockSelection=blockSelection;
+        this.detectionTarget=detectionTarget;
+        this.perturbation=perturbation;
+        this.noise=noise;
+        this.noiseThreads=noiseThreads;
+        this.profileContention=profileContention;
+        this.measureResources=measureResources;
+        this.recordBlockEvents=recordBlockEvents;
+        this.listener=listener;
+    }
+
+    /**
+     * @return {@code true} if the iterations are limited by {@link #durationNanos} instead of {@link #repeat}.
+     */
+    boolean isTimeBudgeted() {
+        return durationNanos > 0;
+    }
+
+    /**
+     * @return {@code true} if the number of iterations is adaptive (see {@link #detectionTarget}).
+     */
+    boolean isAdaptive() {
+        return detectionTarget != null;
+    }
+}
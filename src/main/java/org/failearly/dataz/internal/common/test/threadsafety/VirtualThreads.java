@@ -0,0 +1,67 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * VirtualThreads is a (internal) class for {@link ThreadSafetyVerifier}. It creates a {@link ThreadFactory} for
+ * virtual threads, if the running JVM supports virtual threads (Java 21+).
+ * <br><br>
+ * The virtual thread API is accessed by reflection, so this module could still be compiled and used on older JVMs.
+ */
+final class VirtualThreads {
+    private static final Method OF_VIRTUAL=resolveMethod("java.lang.Thread", "ofVirtual");
+    private static final Method NAME=resolveMethod("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method FACTORY=resolveMethod("java.lang.Thread$Builder", "factory");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return {@code true} if the running JVM supports virtual threads.
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null;
+    }
+
+    /**
+     * Creates a thread factory for virtual threads.
+     *
+     * @param namePrefix the name prefix of each virtual thread (followed by a counter starting with 1).
+     *
+     * @return a virtual thread factory
+     *
+     * @throws IllegalStateException if the JVM does not support virtual threads.
+     */
+    static ThreadFactory threadFactory(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM (Java 21+ required)!");
+        }
+        try {
+            final Object builder=NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create virtual thread factory.", ex);
+        }
+    }
+
+    private static Method resolveMethod(String className, String methodName, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getMethod(methodName, parameterTypes);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import org.failearly.dataz.internal.common.test.annotations.TestsFor;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * LatencyHistogramTest contains tests for LatencyHistogram.
+ */
+@TestsFor({LatencyHistogram.class})
+public class LatencyHistogramTest {
+
+    @Test
+    public void small_values__should_be_recorded_exactly() {
+        final LatencyHistogram histogram=new LatencyHistogram();
+        for (long value=1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals("count", 100L, histogram.getTotalCount());
+        assertEquals("p50", 50L, histogram.getNanosAtPercentile(50.0));
+        assertEquals("p99", 99L, histogram.getNanosAtPercentile(99.0));
+        assertEquals("p100", 100L, histogram.getNanosAtPercentile(100.0));
+        assertEquals("mean", 50.5, histogram.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void large_values__should_be_recorded_with_small_relative_error() {
+        final LatencyHistogram histogram=new LatencyHistogram();
+        for (long value=1; value <= 10_000; value++) {
+            histogram.record(value * 1_000L);
+        }
+
+        assertThat("p50", (double) histogram.getNanosAtPercentile(50.0), Matchers.closeTo(5_000_000.0, 5_000_000.0 / 64));
+        assertThat("p99", (double) histogram.getNanosAtPercentile(99.0), Matchers.closeTo(9_900_000.0, 9_900_000.0 / 64));
+        assertEquals("max", 10_000_000L, histogram.getNanosAtPercentile(100.0));
+        assertEquals("Long.MAX_VALUE", Long.MAX_VALUE, recordOne(Long.MAX_VALUE).getNanosAtPercentile(50.0));
+    }
+
+    @Test
+    public void merge__should_combine_both_histograms() {
+        final LatencyHistogram merged=recordOne(10L).merge(recordOne(1_000_000L));
+
+        assertEquals("count", 2L, merged.getTotalCount());
+        assertEquals("min", 10L, merged.getMinNanos());
+        assertEquals("max", 1_000_000L, merged.getMaxNanos());
+    }
+
+    private static LatencyHistogram recordOne(long value) {
+        final LatencyHistogram histogram=new LatencyHistogram();
+        histogram.record(value);
+        return histogram;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import org.failearly.dataz.internal.common.test.ExceptionVerifier;
+import org.failearly.dataz.internal.common.test.annotations.TestsFor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LongHashSetTest contains tests for LongHashSet.
+ */
+@TestsFor({LongHashSet.class})
+public class LongHashSetTest {
+
+    @Test
+    public void add__should_detect_duplicates() {
+        final LongHashSet set=new LongHashSet(100_000);
+        for (long value=-50_000; value < 50_000; value++) {
+            assertTrue("first add of " + value, set.add(value * 1_024L));
+        }
+        for (long value=-50_000; value < 50_000; value++) {
+            assertFalse("second add of " + value, set.add(value * 1_024L));
+        }
+
+        assertEquals("size", 100_000, set.size());
+        assertTrue("contains 0", set.contains(0L));
+        assertFalse("contains 1", set.contains(1L));
+    }
+
+    @Test
+    public void add__with_large_capacity__should_grow_by_distinct_values() {
+        final LongHashSet set=new LongHashSet(500_000_000);
+        for (long value=0; value < 1_000; value++) {
+            assertTrue("first add of " + value, set.add(value));
+            assertFalse("second add of " + value, set.add(value));
+        }
+
+        assertEquals("size", 1_000, set.size());
+        assertTrue("contains 999", set.contains(999L));
+        assertFalse("contains 1000", set.contains(1_000L));
+    }
+
+    @Test
+    public void clear__should_remove_all_values() {
+        final LongHashSet set=new LongHashSet(2);
+        set.add(0L);
+        set.add(Long.MIN_VALUE);
+
+        set.clear();
+
+        assertEquals("size", 0, set.size());
+        assertFalse("contains 0", set.contains(0L));
+        assertTrue("add after clear", set.add(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void add__exceeding_capacity__should_throw_exception() throws Throwable {
+        final LongHashSet set=new LongHashSet(1);
+        set.add(42L);
+
+        ExceptionVerifier.on(() -> set.add(43L))
+            .expect(IllegalStateException.class)
+            .expect("Capacity of 1 exceeded.")
+            .verify();
+    }
+}
@@ -15,16 +15,40 @@ package org.failearly.dataz.internal.common.test.threadsafety;
 import org.failearly.dataz.internal.common.test.ExceptionVerifier;
 import org.failearly.dataz.internal.common.test.annotations.TestsFor;
 import org.hamcrest.Matchers;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * ThreadSafetyVerifierTest contains tests for ThreadSafetyVerifier.
@@ -32,10 +56,74 @@ import static org.junit.Assert.assertThat;
 @TestsFor({ThreadSafetyVerifier.class})
 public class ThreadSafetyVerifierTest {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder=new TemporaryFolder();
+
     private static final String PATTERN="yyyy-MM-dd'T'HH:mm:ss.SSSZ";
     private static final String DATE_TO_PARSE0="2001-07-04T12:08:56.235-0700";
     private static final String DATE_TO_PARSE1="2016-03-18T12:08:56.235-0100";
 
+    private static final class NotThreadSafeCounter {
+        private int counter;
+
+        int incrementAndGet() {
+            final int value=counter;
+            Thread.yield();
+            counter=value + 1;
+            return counter;
+        }
+    }
+
+    private static final class ManagedNotThreadSafeCounter {
+        private int counter;
+
+        int incrementAndGet() {
+            final int value=counter;
+            Interleavings.switchPoint("read counter " + value);
+            counter=value + 1;
+            return counter;
+        }
+    }
+
+    private static final class DeadlockingResource {
+        private final Object lockA=new Object();
+        private final Object lockB=new Object();
+
+        void lockAThenB() throws InterruptedException {
+            synchronized (lockA) {
+                Thread.sleep(10);
+                synchronized (lockB) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        void lockBThenA() throws InterruptedException {
+            synchronized (lockB) {
+                Thread.sleep(10);
+                synchronized (lockA) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private static void busyWhileLocked(Object lock) {
+        synchronized (lock) {
+            final long until=System.nanoTime() + 100_000L;
+            //noinspection StatementWithEmptyBody
+            while (System.nanoTime() < until) {
+                // busy
+            }
+        }
+    }
+
+    private static void sleepWhileLocked(Object lock) throws InterruptedException {
+        synchronized (lock) {
+            Thread.sleep(1);
+        }
+    }
+
     private void assertSimpleDateFormatter(SimpleDateFormat sharedDateFormatter, String dateAsString) throws ParseException {
         final Date expected=new SimpleDateFormat(PATTERN).parse(dateAsString);
 
@@ -81,6 +169,855 @@ public class ThreadSafetyVerifierTest {
             .verify();
     }
 
+    @Test
+    public void not_thread_safety_class__on_virtual_threads__should_be_detected() throws Throwable {
+        assumeTrue("Virtual threads supported?", VirtualThreads.isSupported());
+
+        final ExecutionBlockVerifier<NotThreadSafeCounter, Integer> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Integer.class, NotThreadSafeCounter::new)
+            .when(NotThreadSafeCounter::incrementAndGet)
+            .thenAsserResulttList(ld -> assertEquals(ld.size(), new HashSet<>(ld).size()))
+            .threads(1_000)
+            .onVirtualThreads();
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .verify();
+    }
+
+    @Test
+    public void onVirtualThreads__without_virtual_thread_support__should_throw_exception() throws Throwable {
+        assumeFalse("Virtual threads not supported?", VirtualThreads.isSupported());
+
+        ExceptionVerifier.on(() -> ThreadSafetyVerifier.given(Object::new).onVirtualThreads())
+            .expect(IllegalStateException.class)
+            .expect("Virtual threads are not supported by this JVM (Java 21+ required)!")
+            .verify();
+    }
+
+    @Test
+    public void onVirtualThreads__with_measureResources__should_throw_exception() throws Throwable {
+        assumeTrue("Virtual threads supported?", VirtualThreads.isSupported());
+
+        ExceptionVerifier.on(() -> ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(AtomicLong::incrementAndGet)
+                .onVirtualThreads()
+                .measureResources()
+                .verify()
+            )
+            .expect(IllegalArgumentException.class)
+            .expect("Resource measuring is not supported for virtual threads! Please use either onVirtualThreads() " +
+                "or measureResources().")
+            .verify();
+    }
+
+    @Test
+    public void not_thread_safety_class__using_VerificationEngine__should_be_detected_and_engine_resized_temporarily() throws Throwable {
+        try (VerificationEngine engine=VerificationEngine.create(1)) {
+            final ExecutionBlockVerifier<NotThreadSafeCounter, Integer> threadSafetyVerifier=ThreadSafetyVerifier
+                .given(Integer.class, NotThreadSafeCounter::new)
+                .when(NotThreadSafeCounter::incrementAndGet)
+                .thenAsserResulttList(ld -> assertEquals(ld.size(), new HashSet<>(ld).size()))
+                .threads(8)
+                .using(engine);
+
+            ExceptionVerifier.on(threadSafetyVerifier::verify)
+                .expect(AssertionError.class)
+                .verify();
+            assertEquals("Engine capacity after release", 1, engine.capacity());
+        }
+    }
+
+    @Test
+    public void abandoned_threads__using_VerificationEngine__should_be_released_after_termination() throws Throwable {
+        try (VerificationEngine engine=VerificationEngine.create(2)) {
+            final VerificationBlockVerifier<AtomicLong> threadSafetyVerifier=ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(ThreadSafetyVerifierTest::sleepInterruptibly)
+                .threads(2)
+                .repeat(1)
+                .iterationTimeout(Duration.ofMillis(200))
+                .using(engine);
+
+            ExceptionVerifier.on(threadSafetyVerifier::verify)
+                .expect(AssertionError.class)
+                .verify();
+            final long deadline=System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (engine.capacity() != 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("Engine capacity after termination of abandoned threads", 2, engine.capacity());
+        }
+    }
+
+    private static void sleepInterruptibly(AtomicLong ignored) {
+        try {
+            Thread.sleep(60_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void close__on_shared_VerificationEngine__should_keep_engine_usable() throws Throwable {
+        VerificationEngine.shared().close();
+
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .repeat(5)
+            .onSharedEngine()
+            .verify();
+
+        assertEquals("#Iterations", 5, report.getIterations());
+    }
+
+    @Test
+    public void givenInt__with_not_thread_safety_counter__should_detect_duplicates() throws Throwable {
+        final IntExecutionBlockVerifier<NotThreadSafeCounter> threadSafetyVerifier=ThreadSafetyVerifier
+            .givenInt(NotThreadSafeCounter::new)
+            .when(NotThreadSafeCounter::incrementAndGet)
+            .thenAssertUnique()
+            .threads(4)
+            .operationsPerThread(100);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("is not unique"))
+            .verify();
+    }
+
+    @Test
+    public void givenLong__with_thread_safety_id_generator__should_pass() throws Throwable {
+        ThreadSafetyVerifier
+            .givenLong(AtomicLong::new)
+            .when(AtomicLong::incrementAndGet)
+            .then(id -> id > 0)
+            .thenAssertUnique()
+            .thenAssertResults(ids -> assertEquals("#ids", 4_000, ids.length))
+            .threads(4)
+            .operationsPerThread(1_000)
+            .repeat(10)
+            .verify();
+    }
+
+    @Test
+    public void expectOutcome__should_count_outcomes_across_all_iterations() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(AtomicInteger::incrementAndGet)
+            .expectOutcome(Expect.ACCEPTABLE, 1, 2)
+            .threads(2)
+            .repeat(50)
+            .verify();
+
+        final OutcomeHistogram<?> outcomes=report.getOutcomes().get();
+        assertEquals("total", 100L, outcomes.getTotalCount());
+        assertEquals("outcomes", Collections.singleton(50L), new HashSet<>(outcomes.getCounts().values()));
+    }
+
+    @Test
+    public void otherOutcomes__should_count_distinct_undeclared_outcomes_up_to_a_limit() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(AtomicInteger::incrementAndGet)
+            .expectOutcome(Expect.ACCEPTABLE, 1)
+            .otherOutcomes(Expect.ACCEPTABLE_INTERESTING)
+            .threads(1)
+            .operationsPerThread(100)
+            .repeat(2)
+            .verify();
+
+        final OutcomeHistogram<?> outcomes=report.getOutcomes().get();
+        assertEquals("total", 200L, outcomes.getTotalCount());
+        assertEquals("#outcomes", 1 + OutcomeHistogram.MAX_OTHER_OUTCOMES, outcomes.getCounts().size());
+        assertEquals("other", 200L - 2L - 2L * OutcomeHistogram.MAX_OTHER_OUTCOMES, outcomes.getOtherCount());
+    }
+
+    @Test
+    public void expectOutcome__with_undeclared_outcome__should_fail() throws Throwable {
+        final ExecutionBlockVerifier<AtomicInteger, Integer> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(AtomicInteger::incrementAndGet)
+            .expectOutcome(Expect.ACCEPTABLE, 1)
+            .threads(2);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Forbidden outcome 2 observed."))
+            .verify();
+    }
+
+    @Test
+    public void arbiter__with_not_thread_safety_counter__should_detect_lost_updates() throws Throwable {
+        final VerificationBlockVerifier<NotThreadSafeCounter> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(NotThreadSafeCounter::new)
+            .whenAndThen(NotThreadSafeCounter::incrementAndGet)
+            .arbiter((counter, results) -> assertEquals(
+                "final counter",
+                results.getNumberOfActors() * results.getOperationsPerActor(),
+                counter.counter
+            ))
+            .threads(4)
+            .operationsPerThread(10);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Arbiter failed in iteration no"))
+            .verify();
+    }
+
+    @Test
+    public void arbiter__should_get_results_of_all_actors() throws Throwable {
+        ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(AtomicInteger::incrementAndGet)
+            .arbiter((counter, results) -> {
+                int max=0;
+                for (int actor=0; actor < results.getNumberOfActors(); actor++) {
+                    for (int result : results.getResults(actor)) {
+                        max=Math.max(max, result);
+                    }
+                }
+                assertEquals("max result", counter.get(), max);
+            })
+            .threads(4)
+            .operationsPerThread(10)
+            .verify();
+    }
+
+    @Test
+    public void times__should_assign_roles_to_threads_in_each_iteration() throws Throwable {
+        ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(AtomicInteger::incrementAndGet).times(1)
+            .or(AtomicInteger::get).times(3)
+            .arbiter((counter, results) -> {
+                for (int actor=0; actor < results.getNumberOfActors(); actor++) {
+                    for (int op=0; op < results.getOperationsPerActor(); op++) {
+                        assertEquals("role of actor " + actor, actor == 0 ? 0 : 1, results.getBlockIndex(actor, op));
+                    }
+                }
+                assertEquals("writes", results.getOperationsPerActor(), counter.get());
+            })
+            .threads(4)
+            .operationsPerThread(10)
+            .verify();
+    }
+
+    @Test
+    public void times__with_less_threads_than_roles__should_throw_exception() throws Throwable {
+        ExceptionVerifier.on(() -> ThreadSafetyVerifier
+                .given(Integer.class, AtomicInteger::new)
+                .when(AtomicInteger::incrementAndGet).times(1)
+                .or(AtomicInteger::get).times(3)
+                .then(value -> value >= 0)
+                .threads(2)
+                .verify()
+            )
+            .expect(IllegalArgumentException.class)
+            .expect("Missing threads for roles! #Threads (2) >= sum of times() (4)")
+            .verify();
+    }
+
+    @Test
+    public void weight__should_choose_blocks_proportional_to_their_weight() throws Throwable {
+        final AtomicInteger[] executions={new AtomicInteger(), new AtomicInteger()};
+        ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(counter -> executions[0].incrementAndGet())
+            .or(counter -> executions[1].incrementAndGet()).weight(3)
+            .then(value -> value > 0)
+            .threads(2)
+            .operationsPerThread(1_000)
+            .repeat(2)
+            .seed(42L)
+            .verify();
+
+        assertEquals("#Operations", 4_000, executions[0].get() + executions[1].get());
+        assertTrue("block 0 (weight 1): " + executions[0], Math.abs(executions[0].get() - 1_000) < 150);
+        assertTrue("block 1 (weight 3): " + executions[1], Math.abs(executions[1].get() - 3_000) < 150);
+    }
+
+    @Test
+    public void times_mixed_with_weight__should_throw_exception() throws Throwable {
+        ExceptionVerifier.on(() -> ThreadSafetyVerifier
+                .given(Integer.class, AtomicInteger::new)
+                .when(AtomicInteger::incrementAndGet).times(1)
+                .or(AtomicInteger::get).weight(31)
+                .then(value -> value >= 0)
+                .verify()
+            )
+            .expect(IllegalArgumentException.class)
+            .expect("Roles and weights could not be mixed! Please use either times() or weight().")
+            .verify();
+    }
+
+    @Test
+    public void stride__should_verify_each_shared_instance() throws Throwable {
+        final VerificationBlockVerifier<NotThreadSafeCounter> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(NotThreadSafeCounter::new)
+            .whenAndThen(NotThreadSafeCounter::incrementAndGet)
+            .arbiter((counter, results) -> assertEquals("final counter", results.getNumberOfActors(), counter.counter))
+            .threads(4)
+            .stride(16);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("of 16 (start skew"))
+            .expect(Matchers.containsString(".stride(16)"))
+            .verify();
+    }
+
+    @Test
+    public void prepareAhead__should_clean_up_all_created_instances() throws Throwable {
+        final AtomicInteger created=new AtomicInteger();
+        final AtomicInteger cleanedUp=new AtomicInteger();
+
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(Integer.class, () -> {
+                created.incrementAndGet();
+                return new AtomicInteger();
+            })
+            .when(AtomicInteger::incrementAndGet)
+            .then(value -> value > 0)
+            .prepareAhead(4)
+            .cleanup(counter -> cleanedUp.incrementAndGet())
+            .threads(2)
+            .repeat(20)
+            .verify();
+
+        assertEquals("iterations", 20, report.getIterations());
+        assertThat("created instances", created.get(), Matchers.greaterThanOrEqualTo(20));
+        assertEquals("cleaned up instances", created.get(), cleanedUp.get());
+    }
+
+    @Test
+    public void not_thread_safety_class__with_operations_per_thread__should_be_detected() throws Throwable {
+        final VerificationBlockVerifier<SimpleDateFormat> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(() -> new SimpleDateFormat(PATTERN))
+            .whenAndThen(
+                sharedDateFormatter -> assertSimpleDateFormatter(sharedDateFormatter, DATE_TO_PARSE0)
+            )
+            .or(
+                sharedDateFormatter -> assertSimpleDateFormatter(sharedDateFormatter, DATE_TO_PARSE1)
+            )
+            .threads(4)
+            .operationsPerThread(10_000)
+            .repeat(10);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .verify();
+    }
+
+    @Test
+    public void thread_safety_class__should_report_start_skew_of_each_iteration() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(4)
+            .repeat(10)
+            .operationsPerThread(5)
+            .spinBeforePark(100)
+            .verify();
+
+        assertEquals("#Iterations", 10, report.getIterations());
+        assertEquals("#Operations", 10 * 4 * 5, report.getOperations());
+        assertEquals("#Start skews", 10, report.getStartSkewNanos().length);
+        assertEquals("#Start skew statistics", 10L, report.getStartSkewStatistics().get().getCount());
+        assertThat("Min start skew", report.getStartSkewStatistics().get().getMin(), Matchers.greaterThanOrEqualTo(0L));
+        assertEquals("Max start skew",
+            report.getStartSkewStatistics().get().getMax(),
+            report.getStartSkewNanos(report.getMaxStartSkewIteration().getAsInt()));
+    }
+
+    @Test
+    public void failure_message__should_contain_seed_and_block_choices_for_replay() throws Throwable {
+        final SplittableRandom expectedRandom=new SplittableRandom(42L).split();
+        final List<Integer> expectedBlockChoices=new ArrayList<>();
+        for (int op=0; op < 8; op++) {
+            expectedBlockChoices.add(expectedRandom.nextInt(2));
+        }
+
+        final VerificationBlockVerifier<Object> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Object::new)
+            .whenAndThen(sharedObject -> {})
+            .or(sharedObject -> fail("Block 1 fails always"))
+            .threads(1)
+            .operationsPerThread(8)
+            .seed(42L);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.allOf(
+                Matchers.containsString("Replay the iteration with seed(42L).threads(1).operationsPerThread(8).repeat(1)"),
+                Matchers.containsString(": " + expectedBlockChoices)
+            ))
+            .verify();
+    }
+
+    @Test
+    public void failFast__should_stop_remaining_operations_after_first_failure() throws Throwable {
+        final VerificationBlockVerifier<Object> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Object::new)
+            .whenAndThen(sharedObject -> fail("Fails always"))
+            .threads(1)
+            .operationsPerThread(1_000)
+            .failFast();
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Caught 1 assertion error(s) or unexpected exception(s) in iteration no 0"))
+            .verify();
+    }
+
+    @Test
+    public void forDuration__should_iterate_until_time_budget_has_been_used_up() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .operationsPerThread(10)
+            .forDuration(Duration.ofMillis(200))
+            .verify();
+
+        assertThat("Elapsed", report.getElapsed(), Matchers.greaterThanOrEqualTo(Duration.ofMillis(200)));
+        assertThat("#Iterations", report.getIterations(), Matchers.greaterThan(0));
+        assertEquals("#Operations", report.getIterations() * 2L * 10L, report.getOperations());
+    }
+
+    @Test
+    public void detect__should_stop_after_required_effective_iterations() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(1)
+            .operationsPerThread(10)
+            .detect(0.01, 0.95)
+            .verify();
+
+        assertEquals("#Iterations", 299, report.getIterations());
+        assertEquals("#Effective iterations", 299L, report.getEffectiveIterations());
+        assertTrue("Detection target reached", report.isDetectionTargetReached());
+        assertThat("Achieved confidence", report.getAchievedConfidence().orElse(0.0), Matchers.greaterThanOrEqualTo(0.95));
+    }
+
+    @Test
+    public void comparePerturbations__should_report_each_strategy() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .operationsPerThread(10)
+            .forDuration(Duration.ofMillis(100))
+            .comparePerturbations(
+                Perturbation.none(),
+                Perturbation.yield(0.5),
+                Perturbation.park(0.1, Duration.ofNanos(10_000)).atStart()
+            )
+            .noise(Noise.ALLOCATION, 1)
+            .verify();
+
+        final PerturbationComparison comparison=report.getPerturbationComparison().orElseThrow(AssertionError::new);
+        assertEquals("#Strategies", 3, comparison.getReports().size());
+        assertEquals("Detections/s", 0.0, comparison.getReport(Perturbation.yield(0.5)).orElseThrow(AssertionError::new).getDetectionsPerSecond(), 0.0);
+    }
+
+    @Test
+    public void perturb__with_one_operation_per_thread__should_apply_perturbation() throws Throwable {
+        final AtomicInteger perturbations=new AtomicInteger();
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .repeat(50)
+            .perturb(Perturbation.custom(1.0, perturbations::incrementAndGet))
+            .verify();
+
+        assertEquals("#Perturbations", 2 * report.getIterations(), perturbations.get());
+    }
+
+    @Test
+    public void shrinkOnFailure__with_used_up_budget__should_report_smallest_configuration_found_so_far() throws Throwable {
+        final VerificationBlockVerifier<AtomicInteger> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(AtomicInteger::new)
+            .whenAndThen(atomicInteger -> fail("Always fails"))
+            .threads(4)
+            .operationsPerThread(8)
+            .repeat(10)
+            .shrinkOnFailure(1, Duration.ofNanos(1));
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.allOf(
+                Matchers.containsString("Smallest failing configuration (0 shrink step(s), 0 run(s), shrink budget of PT0.000000001S used up)"),
+                Matchers.containsString("threads(4).operationsPerThread(8)")
+            ))
+            .verify();
+    }
+
+    @Test
+    public void shrinkOnFailure__should_report_smallest_failing_configuration() throws Throwable {
+        final VerificationBlockVerifier<AtomicInteger> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(AtomicInteger::new)
+            .whenAndThen(AtomicInteger::incrementAndGet)
+            .or(atomicInteger -> fail("Always fails"))
+            .or(AtomicInteger::decrementAndGet)
+            .threads(4)
+            .operationsPerThread(8)
+            .repeat(10)
+            .shrinkOnFailure(1);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.allOf(
+                Matchers.containsString("Smallest failing configuration"),
+                Matchers.containsString("threads(1).operationsPerThread(1) with blocks [1]"),
+                Matchers.containsString("could not be replayed by it's seed: the blocks (weights [0, 1, 0])")
+            ))
+            .verify();
+    }
+
+    @Test
+    public void deadlock__should_be_reported_by_watchdog() throws Throwable {
+        final VerificationBlockVerifier<DeadlockingResource> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(DeadlockingResource::new)
+            .whenAndThen(DeadlockingResource::lockAThenB)
+            .or(DeadlockingResource::lockBThenA)
+            .threads(2)
+            .repeat(1_000)
+            .iterationTimeout(Duration.ofSeconds(1));
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.allOf(
+                Matchers.containsString("Watchdog: Iteration no"),
+                Matchers.containsString("Deadlock detected (2 threads)"),
+                Matchers.containsString("Stuck worker threads (2)")
+            ))
+            .verify();
+    }
+
+    @Test
+    public void measure__should_report_latency_and_throughput() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .operationsPerThread(100)
+            .repeat(5)
+            .measure()
+            .verify();
+
+        assertEquals("#Latencies", report.getOperations(), report.getLatency().get().getTotalCount());
+        assertThat("Throughput", report.getOperationsPerSecondStatistics().get().getMin(), Matchers.greaterThan(0.0));
+    }
+
+    @Test
+    public void sweepThreads__should_report_scaling_curve_and_write_csv_file() throws Throwable {
+        final Path reportsDirectory=temporaryFolder.getRoot().toPath();
+
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .operationsPerThread(10)
+            .repeat(5)
+            .sweepThreads(1, 2, 4)
+            .named("atomic-long")
+            .reportsTo(reportsDirectory)
+            .verify();
+
+        final ScalingCurve scalingCurve=report.getScalingCurve().get();
+        assertEquals("#Levels", 3, scalingCurve.getLevels().size());
+        assertEquals("Last level", 4, report.getNumThreads());
+        assertEquals("Speedup of first level", 1.0, scalingCurve.getLevels().get(0).getSpeedup(), 0.0);
+        assertEquals("#Lines of CSV file", 4, Files.readAllLines(reportsDirectory.resolve("atomic-long-scaling.csv")).size());
+    }
+
+    @Test
+    public void sweepThreads__with_not_thread_safety_class__should_fail_after_all_levels() throws Throwable {
+        final ExecutionBlockVerifier<NotThreadSafeCounter, Integer> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Integer.class, NotThreadSafeCounter::new)
+            .when(NotThreadSafeCounter::incrementAndGet)
+            .thenAsserResulttList(ld -> assertEquals(ld.size(), new HashSet<>(ld).size()))
+            .repeat(10)
+            .sweepThreads(1, 8)
+            .reportsTo(temporaryFolder.getRoot().toPath());
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Sweep detected failures"))
+            .verify();
+    }
+
+    @Test
+    public void expectSpeedup__with_serializing_class__should_fail() throws Throwable {
+        final VerificationBlockVerifier<Object> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(Object::new)
+            .whenAndThen(ThreadSafetyVerifierTest::busyWhileLocked)
+            .operationsPerThread(10)
+            .repeat(5)
+            .sweepThreads(1, 4)
+            .expectSpeedup(4, 3.0)
+            .reportsTo(temporaryFolder.getRoot().toPath());
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Speedup at 4 thread(s): expected >= 3.00"))
+            .verify();
+    }
+
+    @Test
+    public void profileContention__should_report_blocking_monitor() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(Object::new)
+            .whenAndThen(ThreadSafetyVerifierTest::sleepWhileLocked)
+            .threads(2)
+            .operationsPerThread(5)
+            .repeat(10)
+            .profileContention()
+            .verify();
+
+        final ContentionProfile contention=report.getContention().orElseThrow(AssertionError::new);
+        assertEquals("#Iterations", 10, contention.getIterations().size());
+        assertThat("Blocked count", contention.getTotal().getBlockedCount(), Matchers.greaterThan(0L));
+        assertThat("Lock samples", contention.getLockSamples().keySet(), Matchers.hasItem(Matchers.allOf(
+            Matchers.startsWith("BLOCKED on java.lang.Object"),
+            Matchers.containsString("ThreadSafetyVerifierTest.sleepWhileLocked")
+        )));
+    }
+
+    @Test
+    public void measureResources__should_report_allocation_per_operation() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(AtomicReference<byte[]>::new)
+            .whenAndThen(reference -> reference.set(new byte[1024]))
+            .or(reference -> reference.set(null))
+            .threads(2)
+            .operationsPerThread(10)
+            .repeat(10)
+            .measureResources()
+            .verify();
+
+        final ResourceUsage resourceUsage=report.getResourceUsage().orElseThrow(AssertionError::new);
+        assertEquals("#Operations", 200L, resourceUsage.getOperations());
+        assumeTrue("Allocation measured?", resourceUsage.isAllocationMeasured());
+        assertThat("Bytes/op of allocating block", resourceUsage.getAllocatedBytesPerOperation(0), Matchers.greaterThanOrEqualTo(1024.0));
+        assertThat("Bytes/op of other block", resourceUsage.getAllocatedBytesPerOperation(1), Matchers.lessThan(1024.0));
+    }
+
+    @Test
+    public void measureResources__should_restore_cpu_time_flag() throws Throwable {
+        final ThreadMXBean threadMXBean=ManagementFactory.getThreadMXBean();
+        assumeTrue("CPU time supported?", threadMXBean.isCurrentThreadCpuTimeSupported());
+        final boolean cpuTimeEnabled=threadMXBean.isThreadCpuTimeEnabled();
+        threadMXBean.setThreadCpuTimeEnabled(false);
+        try {
+            ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(AtomicLong::incrementAndGet)
+                .threads(2)
+                .operationsPerThread(10)
+                .repeat(2)
+                .measureResources()
+                .verify();
+
+            assertTrue("CPU time disabled again?", !threadMXBean.isThreadCpuTimeEnabled());
+        } finally {
+            threadMXBean.setThreadCpuTimeEnabled(cpuTimeEnabled);
+        }
+    }
+
+    @Test
+    public void recordBlockEvents__should_emit_flight_recorder_events() throws Throwable {
+        final Path recordingFile=temporaryFolder.getRoot().toPath().resolve("events.jfr");
+        try (Recording recording=new Recording()) {
+            recording.enable(IterationEvent.NAME);
+            recording.enable(BlockExecutionEvent.NAME);
+            recording.start();
+            ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(AtomicLong::incrementAndGet)
+                .threads(2)
+                .operationsPerThread(3)
+                .repeat(5)
+                .named("jfr-test")
+                .recordBlockEvents()
+                .verify();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        final List<RecordedEvent> events=RecordingFile.readAllEvents(recordingFile);
+        final List<RecordedEvent> iterationEvents=events.stream()
+            .filter(event -> IterationEvent.NAME.equals(event.getEventType().getName()))
+            .collect(Collectors.toList());
+        assertEquals("#Iteration events", 5, iterationEvents.size());
+        assertEquals("Verifier", "jfr-test", iterationEvents.get(0).getString("verifier"));
+        assertEquals("#Block events", 30L, events.stream()
+            .filter(event -> BlockExecutionEvent.NAME.equals(event.getEventType().getName()))
+            .count());
+    }
+
+    @Test
+    public void listener__should_count_iterations_and_blocks() throws Throwable {
+        final CountingListener metrics=new CountingListener(true);
+        ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .operationsPerThread(3)
+            .repeat(5)
+            .listener(metrics)
+            .verify();
+
+        assertEquals("#Runs", 1L, metrics.getRuns());
+        assertEquals("#Iterations", 5L, metrics.getIterations());
+        assertEquals("#Failed iterations", 0L, metrics.getFailedIterations());
+        assertEquals("#Blocks", 30L, metrics.getBlocks());
+        assertEquals("#Operations", 30L, metrics.getOperations());
+
+        try {
+            ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(counter -> assertTrue("never", counter.incrementAndGet() < 0))
+                .threads(2)
+                .operationsPerThread(3)
+                .repeat(5)
+                .listener(metrics)
+                .verify();
+            fail("AssertionError expected");
+        } catch (AssertionError ignored) {
+            assertEquals("#Runs", 2L, metrics.getRuns());
+            assertEquals("#Failed iterations", 1L, metrics.getFailedIterations());
+            assertEquals("#Failed blocks", 6L, metrics.getFailedBlocks());
+        }
+    }
+
+    @Test
+    public void failFast_within_sweep__should_execute_blocks_in_each_iteration() throws Throwable {
+        final AtomicInteger executedBlocks=new AtomicInteger();
+        try {
+            ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(counter -> {
+                    executedBlocks.incrementAndGet();
+                    fail("always");
+                })
+                .sweepThreads(1)
+                .repeat(20)
+                .operationsPerThread(5)
+                .failFast()
+                .verify();
+            fail("AssertionError expected");
+        } catch (AssertionError expected) {
+            assertEquals("#Executed blocks (one per iteration)", 20, executedBlocks.get());
+        }
+    }
+
+    @Test
+    public void listener__throwing_on_worker__should_fail_iteration_without_hang() throws Throwable {
+        final RuntimeException listenerFailure=new IllegalStateException("listener failed");
+        try {
+            ThreadSafetyVerifier
+                .given(AtomicLong::new)
+                .whenAndThen(AtomicLong::incrementAndGet)
+                .threads(2)
+                .repeat(5)
+                .iterationTimeout(Duration.ofSeconds(30))
+                .listener(new VerificationListener() {
+                    @Override
+                    public boolean isBlockListener() {
+                        return true;
+                    }
+
+                    @Override
+                    public void onBlockEnd(int worker, int blockIdx, long nanos, boolean ok) {
+                        throw listenerFailure;
+                    }
+                })
+                .verify();
+            fail("AssertionError expected");
+        } catch (AssertionError failure) {
+            assertTrue(failure.getMessage(), failure.getMessage().contains("caught unexpected exception outside of the blocks"));
+            assertEquals("cause", listenerFailure, failure.getCause());
+        }
+    }
+
+    @Test
+    public void exploreInterleavings__should_report_failing_interleaving_step_by_step() throws Throwable {
+        try {
+            ThreadSafetyVerifier
+                .given(Integer.class, ManagedNotThreadSafeCounter::new)
+                .when(ManagedNotThreadSafeCounter::incrementAndGet)
+                .thenAsserResulttList(ld -> assertEquals(ld.size(), new HashSet<>(ld).size()))
+                .threads(2)
+                .exploreInterleavings(1)
+                .verify();
+            fail("AssertionError expected");
+        } catch (AssertionError failure) {
+            final String message=failure.getMessage();
+            assertTrue(message, message.contains("(1 context switch(es))"));
+            assertTrue(message, message.contains("thread 0: read counter 0"));
+            assertTrue(message, message.contains("thread 1: read counter 0"));
+            assertTrue(message, message.contains(".exploreInterleavings(1, 100000)"));
+            assertFalse(message, message.contains("\r"));
+        }
+    }
+
+    @Test
+    public void exploreInterleavings__should_explore_all_interleavings_within_bound() throws Throwable {
+        final VerificationReport report=ThreadSafetyVerifier
+            .given(Integer.class, AtomicInteger::new)
+            .when(counter -> {
+                final int value=counter.incrementAndGet();
+                Interleavings.switchPoint("incremented " + value);
+                return value;
+            })
+            .thenAsserResulttList(ld -> assertEquals(ld.size(), new HashSet<>(ld).size()))
+            .threads(2)
+            .operationsPerThread(2)
+            .exploreInterleavings(2)
+            .verify();
+
+        assertEquals("#Interleavings", 26, report.getIterations());
+    }
+
+    @Test
+    public void compareWithBaseline__should_create_baseline_and_detect_regression() throws Throwable {
+        final Path reportsDirectory=temporaryFolder.getRoot().toPath();
+        final Path baselineFile=reportsDirectory.resolve("baseline-test-baseline.properties");
+
+        ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .repeat(5)
+            .named("baseline-test")
+            .reportsTo(reportsDirectory)
+            .compareWithBaseline(0.5)
+            .verify();
+        assertThat("Baseline created?", Files.exists(baselineFile), Matchers.is(true));
+
+        Files.write(baselineFile, Collections.singletonList("threads.2.operationsPerSecond=1.0E15"));
+        final VerificationBlockVerifier<AtomicLong> threadSafetyVerifier=ThreadSafetyVerifier
+            .given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(2)
+            .repeat(5)
+            .named("baseline-test")
+            .reportsTo(reportsDirectory)
+            .compareWithBaseline(0.5);
+
+        ExceptionVerifier.on(threadSafetyVerifier::verify)
+            .expect(AssertionError.class)
+            .expect(Matchers.containsString("Throughput at 2 thread(s) regressed"))
+            .verify();
+    }
+
     // TODO: Test thread safe classes (VBV and EBV)
     // TODO: Test Unexpected Exception (VBV and EBV)
     // TODO: Test Assertion Error (VBV and EBV)
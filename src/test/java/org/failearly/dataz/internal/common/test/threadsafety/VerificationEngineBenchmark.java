@@ -0,0 +1,62 @@
+/*
+ * dataZ - Test Support For Data Stores.
+ *
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.failearly.dataz.internal.common.test.threadsafety;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VerificationEngineBenchmark compares the per {@link ThreadSafetyVerifier#verify()} setup cost of a new thread pool
+ * (the default) with the {@link VerificationEngine}.
+ * <br><br>
+ * Run it as plain Java application (no arguments necessary): {@code [numThreads] [numVerifies]}.
+ */
+public final class VerificationEngineBenchmark {
+    private static final int WARMUP_VERIFIES=200;
+
+    public static void main(String[] args) throws Throwable {
+        final int numThreads=args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        final int numVerifies=args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        final VerificationEngine engine=VerificationEngine.create(numThreads);
+
+        run("new thread pool (warmup)", WARMUP_VERIFIES, () -> newVerifier(numThreads).verify());
+        run("verification engine (warmup)", WARMUP_VERIFIES, () -> newVerifier(numThreads).using(engine).verify());
+
+        final double before=run("new thread pool", numVerifies, () -> newVerifier(numThreads).verify());
+        final double after=run("verification engine", numVerifies, () -> newVerifier(numThreads).using(engine).verify());
+
+        System.out.printf("Speedup per verify (%d threads): %.1fx%n", numThreads, before / after);
+        engine.close();
+    }
+
+    private static VerificationBlockVerifier<AtomicLong> newVerifier(int numThreads) {
+        return ThreadSafetyVerifier.given(AtomicLong::new)
+            .whenAndThen(AtomicLong::incrementAndGet)
+            .threads(numThreads)
+            .repeat(1);
+    }
+
+    private interface Action {
+        void run() throws Throwable;
+    }
+
+    private static double run(String name, int numVerifies, Action action) throws Throwable {
+        final long start=System.nanoTime();
+        for (int i=0; i < numVerifies; i++) {
+            action.run();
+        }
+        final double microsPerVerify=(System.nanoTime() - start) / 1_000.0 / numVerifies;
+        System.out.printf("%-30s: %10.1f us/verify%n", name, microsPerVerify);
+        return microsPerVerify;
+    }
+}